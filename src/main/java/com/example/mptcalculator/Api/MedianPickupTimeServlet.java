@@ -0,0 +1,262 @@
+package com.example.mptcalculator.Api;
+
+import com.example.mptcalculator.Data.PickupDataRepository;
+import com.example.mptcalculator.Data.PickupTimeQuery;
+import com.example.mptcalculator.Data.PickupTimeResult;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JSON endpoint for median pickup times, answered from the same {@link PickupDataRepository} and cache as the UI
+ * without a Vaadin session:
+ * <pre>
+ * GET /api/median?date=2019-01-07&amp;from=10:00&amp;to=11:00[&amp;until=2019-01-13][&amp;zone=Europe/Helsinki]
+ *     [&amp;percentiles=90,99][&amp;approximate=true]
+ * </pre>
+ * The batch endpoint answers many windows at once, each given as date,from,to[,until], with the other parameters
+ * shared by every window. The results are returned in the order of the windows, and are read from the cache
+ * without being added to it:
+ * <pre>
+ * GET|POST /api/median/batch?window=2019-01-07,10:00,11:00&amp;window=2019-01-07,11:00,12:00[&amp;zone=...]
+ * </pre>
+ * Requests are answered asynchronously on a small pool of worker threads, so waiting requests do not hold
+ * container threads.
+ */
+@WebServlet(urlPatterns = {"/api/median", MedianPickupTimeServlet.BATCH_PATH}, name = "MedianPickupTimeServlet",
+		asyncSupported = true)
+public class MedianPickupTimeServlet extends HttpServlet {
+	
+	public static final String BATCH_PATH = "/api/median/batch";
+	
+	// a week of hourly windows fits into one batch
+	public static final int MAX_BATCH_SIZE = 1000;
+	
+	// a window covers at most a year of dates, and a batch at most ten years in all of its windows
+	public static final int MAX_RANGE_DAYS = 366;
+	public static final int MAX_BATCH_DAYS = 3660;
+	
+	private static final long serialVersionUID = 2019011801L;
+	
+	private transient ExecutorService executor;
+	
+	@Override
+	public void init() {
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+			Thread thread = new Thread(runnable, "median-api-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+	
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		AsyncContext context = request.startAsync();
+		try {
+			executor.execute(() -> {
+				try {
+					respond(request, response);
+				} catch (IOException e) {
+					log("Could not write the response", e);
+				} finally {
+					context.complete();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			write(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, PickupTimeJson.error("Shutting down"));
+			context.complete();
+		}
+	}
+	
+	// batches with many windows are posted as a form
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		doGet(request, response);
+	}
+	
+	private void respond(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		// shared by MyUIServlet once it has started
+		PickupDataRepository repository = (PickupDataRepository) getServletContext()
+				.getAttribute(PickupDataRepository.class.getName());
+		if (repository == null || repository.getDataset() == null) {
+			write(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, PickupTimeJson.error(repository == null
+					? "Data is not loaded yet" : repository.getLoadError()));
+			return;
+		}
+		
+		if (BATCH_PATH.equals(request.getServletPath())) {
+			respondBatch(request, response, repository);
+			return;
+		}
+		
+		PickupTimeQuery query;
+		try {
+			query = parseQuery(request);
+		} catch (IllegalArgumentException | DateTimeException e) {
+			write(response, HttpServletResponse.SC_BAD_REQUEST, PickupTimeJson.error(e.getMessage()));
+			return;
+		}
+		
+		PickupTimeResult result = repository.query(query);
+		StringBuilder json = new StringBuilder(64 + 48 * result.size());
+		PickupTimeJson.appendResult(json, query, result);
+		write(response, 200, json.toString());
+	}
+	
+	private void respondBatch(HttpServletRequest request, HttpServletResponse response,
+			PickupDataRepository repository) throws IOException {
+		List<PickupTimeQuery> queries;
+		try {
+			queries = parseBatch(request);
+		} catch (IllegalArgumentException | DateTimeException e) {
+			write(response, HttpServletResponse.SC_BAD_REQUEST, PickupTimeJson.error(e.getMessage()));
+			return;
+		}
+		
+		// every window is answered from the same dataset
+		List<PickupTimeResult> results = repository.queryAll(queries);
+		StringBuilder json = new StringBuilder("{\"windows\":[");
+		for (int i = 0; i < queries.size(); i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			PickupTimeJson.appendResult(json, queries.get(i), results.get(i));
+		}
+		write(response, 200, json.append("]}").toString());
+	}
+	
+	/**
+	 * Reads a query from the request parameters: date, from and to are required, until, zone, percentiles and
+	 * approximate are optional.
+	 */
+	static PickupTimeQuery parseQuery(HttpServletRequest request) {
+		PickupTimeQuery.Builder builder = new PickupTimeQuery.Builder(LocalDate.parse(required(request, "date")),
+				parseTime(required(request, "from")), parseTime(required(request, "to")));
+		String until = request.getParameter("until");
+		if (until != null) {
+			builder.setEndDate(LocalDate.parse(until));
+		}
+		PickupTimeQuery query = setOptions(builder, request).build();
+		rangeDays(query);
+		return query;
+	}
+	
+	/**
+	 * Reads the queries of a batch from its window parameters, each date,from,to[,until], with the zone,
+	 * percentiles and approximate parameters of the request.
+	 */
+	static List<PickupTimeQuery> parseBatch(HttpServletRequest request) {
+		String[] windows = request.getParameterValues("window");
+		if (windows == null || windows.length == 0) {
+			throw new IllegalArgumentException("Missing parameter window");
+		}
+		if (windows.length > MAX_BATCH_SIZE) {
+			throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " windows per batch");
+		}
+		
+		List<PickupTimeQuery> queries = new ArrayList<>(windows.length);
+		long batchDays = 0;
+		for (String window : windows) {
+			String[] fields = window.split(",");
+			if (fields.length < 3 || fields.length > 4) {
+				throw new IllegalArgumentException("Invalid window " + window);
+			}
+			PickupTimeQuery.Builder builder = new PickupTimeQuery.Builder(LocalDate.parse(fields[0].trim()),
+					parseTime(fields[1].trim()), parseTime(fields[2].trim()));
+			if (fields.length == 4) {
+				builder.setEndDate(LocalDate.parse(fields[3].trim()));
+			}
+			PickupTimeQuery query = setOptions(builder, request).build();
+			batchDays += rangeDays(query);
+			if (batchDays > MAX_BATCH_DAYS) {
+				throw new IllegalArgumentException("At most " + MAX_BATCH_DAYS + " dates in all windows of a batch");
+			}
+			queries.add(query);
+		}
+		return queries;
+	}
+	
+	/**
+	 * @return the number of dates of the query, which must not be more than {@link #MAX_RANGE_DAYS}
+	 */
+	private static long rangeDays(PickupTimeQuery query) {
+		long days = query.getEndDate().toEpochDay() - query.getDate().toEpochDay() + 1;
+		if (days > MAX_RANGE_DAYS) {
+			throw new IllegalArgumentException("At most " + MAX_RANGE_DAYS + " dates from date to until");
+		}
+		return days;
+	}
+	
+	private static PickupTimeQuery.Builder setOptions(PickupTimeQuery.Builder builder, HttpServletRequest request) {
+		String zone = request.getParameter("zone");
+		if (zone != null) {
+			builder.setZone(ZoneId.of(zone));
+		}
+		String percentiles = request.getParameter("percentiles");
+		if (percentiles != null && !percentiles.isEmpty()) {
+			// sorted and distinct like in the UI, so the columns are unique and equal queries share a cache entry
+			Set<Integer> parsed = new TreeSet<>();
+			for (String value : percentiles.split(",")) {
+				parsed.add(Integer.parseInt(value.trim()));
+			}
+			builder.setPercentiles(parsed.stream().mapToInt(Integer::intValue).toArray());
+		}
+		return builder.setApproximate(Boolean.parseBoolean(request.getParameter("approximate")));
+	}
+	
+	private static String required(HttpServletRequest request, String name) {
+		String value = request.getParameter(name);
+		if (value == null || value.isEmpty()) {
+			throw new IllegalArgumentException("Missing parameter " + name);
+		}
+		return value;
+	}
+	
+	/**
+	 * Parses a time of the day as H, H:mm or HH:mm, where 24:00 is midnight at the end of the day.
+	 */
+	private static LocalTime parseTime(String time) {
+		String[] parts = time.split(":");
+		if (parts.length > 2) {
+			throw new IllegalArgumentException("Invalid time " + time);
+		}
+		int hour = Integer.parseInt(parts[0]);
+		int minute = parts.length == 2 ? Integer.parseInt(parts[1]) : 0;
+		if (hour == 24 && minute == 0) {
+			return LocalTime.MIDNIGHT;
+		}
+		return LocalTime.of(hour, minute);
+	}
+	
+	private static void write(HttpServletResponse response, int status, String json) throws IOException {
+		response.setStatus(status);
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		PrintWriter writer = response.getWriter();
+		writer.write(json);
+		writer.flush();
+	}
+}
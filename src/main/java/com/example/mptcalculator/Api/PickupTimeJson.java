@@ -0,0 +1,66 @@
+package com.example.mptcalculator.Api;
+
+import com.example.mptcalculator.Data.PickupTimeQuery;
+import com.example.mptcalculator.Data.PickupTimeResult;
+
+import java.time.LocalTime;
+
+/**
+ * Writes query results as JSON, with the same column names as the CSV download.
+ */
+public class PickupTimeJson {
+	
+	private PickupTimeJson() {
+	}
+	
+	public static void appendResult(StringBuilder json, PickupTimeQuery query, PickupTimeResult result) {
+		json.append("{\"date\":\"").append(query.getDate())
+				.append("\",\"until\":\"").append(query.getEndDate())
+				.append("\",\"from\":\"").append(query.getStartingTime())
+				.append("\",\"to\":\"").append(query.getEndingTime().equals(LocalTime.MIDNIGHT)
+						? "24:00" : query.getEndingTime().toString())
+				.append("\",\"zone\":");
+		appendString(json, query.getZone().getId());
+		json.append(",\"rank_relative_error\":").append(result.getRelativeError());
+		json.append(",\"locations\":[");
+		for (int i = 0; i < result.size(); i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append("{\"location_id\":").append(result.getLocationId(i))
+					.append(",\"median_pickup_time\":").append(result.getMedian(i));
+			for (int column = 0; column < result.getPercentileCount(); column++) {
+				json.append(",\"p").append(result.getPercentile(column)).append("_pickup_time\":")
+						.append(result.getPercentileTime(column, i));
+			}
+			json.append('}');
+		}
+		json.append("]}");
+	}
+	
+	public static String error(String message) {
+		StringBuilder json = new StringBuilder("{\"error\":");
+		appendString(json, message);
+		return json.append('}').toString();
+	}
+	
+	private static void appendString(StringBuilder json, String value) {
+		if (value == null) {
+			json.append("null");
+			return;
+		}
+		
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+}
@@ -0,0 +1,33 @@
+package com.example.mptcalculator.Data;
+
+import com.example.mptcalculator.Utils.Coordinate;
+import com.univocity.parsers.common.ParsingContext;
+import com.univocity.parsers.common.processor.AbstractRowProcessor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Row processor for locations.csv.
+ * <p>
+ * The parser must select the fields in the order of {@link #FIELDS}.
+ */
+public class LocationsProcessor extends AbstractRowProcessor {
+	
+	public static final String[] FIELDS = {"location_id", "longitude", "latitude"};
+	
+	private final Map<Long, Coordinate> locations = new HashMap<>();
+	
+	@Override
+	public void rowProcessed(String[] row, ParsingContext context) {
+		long id = Long.parseLong(row[0]);
+		double lon = Double.parseDouble(row[1]);
+		double lat = Double.parseDouble(row[2]);
+		
+		locations.put(id, new Coordinate(lon, lat));
+	}
+	
+	public Map<Long, Coordinate> getLocations() {
+		return locations;
+	}
+}
@@ -0,0 +1,97 @@
+package com.example.mptcalculator.Data;
+
+import java.util.Arrays;
+
+/**
+ * Median and order statistics of pickup times.
+ */
+public class Medians {
+	
+	private static final int INSERTION_SORT_SIZE = 16;
+	
+	private Medians() {
+	}
+	
+	/**
+	 * Percentile p of n pickup times lies at the zero based position p * (n - 1) / 100, between the ranks
+	 * {@link #lowerRank(int, int)} and {@link #upperRank(int, int)}. Its value is interpolated between the pickup
+	 * times at those ranks and rounded up, so the 50th percentile is the median: the mean of the two middle
+	 * pickup times, rounded up, for an even number of them.
+	 */
+	public static int percentile(int percentile, int size, int lower, int upper) {
+		long remainder = (long) percentile * (size - 1) % 100;
+		return lower + (int) ((remainder * (upper - lower) + 99) / 100);
+	}
+	
+	public static int lowerRank(int percentile, int size) {
+		return (int) ((long) percentile * (size - 1) / 100);
+	}
+	
+	public static int upperRank(int percentile, int size) {
+		return (int) (((long) percentile * (size - 1) + 99) / 100);
+	}
+	
+	/**
+	 * Finds the value with the given zero based rank between from (inclusive) and to (exclusive) in linear time,
+	 * reordering the values in that range.
+	 * <p>
+	 * This is an introselect: a quickselect with three-way partitions, since pickup times repeat a lot,
+	 * that falls back to sorting when the partitions keep being unbalanced.
+	 */
+	public static int select(int[] values, int from, int to, int rank) {
+		int target = from + rank;
+		int depthLimit = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+		while (to - from > INSERTION_SORT_SIZE) {
+			if (depthLimit-- == 0) {
+				Arrays.sort(values, from, to);
+				return values[target];
+			}
+			
+			int pivot = medianOfThree(values[from], values[(from + to) >>> 1], values[to - 1]);
+			
+			// partition into [from, less) < pivot, [less, greater) == pivot and [greater, to) > pivot
+			int less = from;
+			int greater = to;
+			int i = from;
+			while (i < greater) {
+				if (values[i] < pivot) {
+					swap(values, less++, i++);
+				} else if (values[i] > pivot) {
+					swap(values, i, --greater);
+				} else {
+					i++;
+				}
+			}
+			
+			if (target < less) {
+				to = less;
+			} else if (target >= greater) {
+				from = greater;
+			} else {
+				return pivot;
+			}
+		}
+		
+		// insertion sort the small remaining range
+		for (int i = from + 1; i < to; i++) {
+			int value = values[i];
+			int j = i - 1;
+			while (j >= from && values[j] > value) {
+				values[j + 1] = values[j];
+				j--;
+			}
+			values[j + 1] = value;
+		}
+		return values[target];
+	}
+	
+	private static int medianOfThree(int a, int b, int c) {
+		return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+	}
+	
+	private static void swap(int[] values, int i, int j) {
+		int value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+}
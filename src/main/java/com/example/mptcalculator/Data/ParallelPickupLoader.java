@@ -0,0 +1,250 @@
+package com.example.mptcalculator.Data;
+
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses pickup_times.csv on a fork/join pool.
+ * <p>
+ * The file is split into byte ranges that start after a line break, and every range is parsed by its own
+ * {@link CsvParser} into its own {@link PickupStore.Builder}. The builders are appended in file order, so the
+ * resulting store is the same as the one of a sequential parse. Rows must not contain quoted line breaks.
+ * Rows that cannot be parsed are skipped and reported on the standard error stream.
+ * <p>
+ * A range of the file can be parsed on its own, which is how appended rows are read by {@link PickupTailIngestor}.
+ */
+public class ParallelPickupLoader {
+	
+	private static final int MIN_CHUNK_SIZE = 4 * 1024 * 1024;
+	
+	private final ForkJoinPool pool;
+	private final int minChunkSize;
+	
+	public ParallelPickupLoader(ForkJoinPool pool) {
+		this(pool, MIN_CHUNK_SIZE);
+	}
+	
+	/**
+	 * @param minChunkSize the smallest number of bytes parsed by one task, small in tests to split small files
+	 */
+	ParallelPickupLoader(ForkJoinPool pool, int minChunkSize) {
+		this.pool = pool;
+		this.minChunkSize = minChunkSize;
+	}
+	
+	public PickupStore load(File file) throws IOException {
+		return parse(file, 0, Long.MAX_VALUE).build();
+	}
+	
+	/**
+	 * Parses the rows between the byte positions start (inclusive) and end (exclusive) of the file, in file order.
+	 * Both positions must be at the start of a line, and the header line is skipped when it is in the range.
+	 */
+	public PickupStore.Builder parse(File file, long start, long end) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			end = Math.min(end, channel.size());
+			long headerEnd = nextLineStart(channel, 0, end);
+			String headerLine = new BufferedReader(new InputStreamReader(new RangeInputStream(channel, 0, headerEnd),
+					StandardCharsets.UTF_8)).readLine();
+			if (headerLine == null) {
+				throw new IOException("File " + file.getName() + " is empty");
+			}
+			String[] headers = new CsvParser(new CsvParserSettings()).parseLine(headerLine);
+			start = Math.max(start, headerEnd);
+			
+			// split the rows into ranges that start after a line break
+			int chunkCount = (int) Math.max(1, Math.min(pool.getParallelism() * 4L, (end - start) / minChunkSize));
+			List<Long> starts = new ArrayList<>();
+			starts.add(start);
+			for (int i = 1; i < chunkCount; i++) {
+				long chunkStart = nextLineStart(channel, start + (end - start) * i / chunkCount - 1, end);
+				if (chunkStart > starts.get(starts.size() - 1) && chunkStart < end) {
+					starts.add(chunkStart);
+				}
+			}
+			starts.add(Math.max(start, end));
+			
+			try {
+				return pool.invoke(new ParseTask(file.getName(), channel, headers, starts, 0, starts.size() - 1));
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+	}
+	
+	/**
+	 * @return the position after the last line break before the given position, or 0 if there is none
+	 */
+	public static long lastLineEnd(File file, long position) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(8192);
+			position = Math.min(position, channel.size());
+			while (position > 0) {
+				long from = Math.max(0, position - buffer.capacity());
+				buffer.clear();
+				buffer.limit((int) (position - from));
+				int read;
+				do {
+					read = channel.read(buffer, from + buffer.position());
+				} while (read > 0 && buffer.hasRemaining());
+				for (int i = buffer.position() - 1; i >= 0; i--) {
+					if (buffer.get(i) == '\n') {
+						return from + i + 1;
+					}
+				}
+				position = from;
+			}
+			return 0;
+		}
+	}
+	
+	/**
+	 * @return the position after the first line break at or after the given position, or the end of the file
+	 */
+	private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+	
+	/**
+	 * Parses the ranges from first (inclusive) to last (exclusive), splitting them in halves until one is left.
+	 */
+	private static class ParseTask extends RecursiveTask<PickupStore.Builder> {
+		
+		private static final long serialVersionUID = 2019011310L;
+		
+		private final String fileName;
+		private final FileChannel channel;
+		private final String[] headers;
+		private final List<Long> starts;
+		private final int first;
+		private final int last;
+		
+		ParseTask(String fileName, FileChannel channel, String[] headers, List<Long> starts, int first, int last) {
+			this.fileName = fileName;
+			this.channel = channel;
+			this.headers = headers;
+			this.starts = starts;
+			this.first = first;
+			this.last = last;
+		}
+		
+		@Override
+		protected PickupStore.Builder compute() {
+			if (last - first > 1) {
+				int middle = (first + last) >>> 1;
+				ParseTask right = new ParseTask(fileName, channel, headers, starts, middle, last);
+				right.fork();
+				PickupStore.Builder builder = new ParseTask(fileName, channel, headers, starts, first, middle).compute();
+				builder.addAll(right.join());
+				return builder;
+			}
+			
+			PickupStore.Builder builder = new PickupStore.Builder();
+			if (first == last) {
+				return builder;
+			}
+			
+			CsvParserSettings settings = new CsvParserSettings();
+			settings.setHeaders(headers);
+			settings.selectFields(PickupTimesProcessor.FIELDS);
+			PickupTimesProcessor processor = new PickupTimesProcessor(builder);
+			settings.setProcessor(processor);
+			new CsvParser(settings).parse(new RangeInputStream(channel, starts.get(first), starts.get(last)), "UTF-8");
+			if (processor.getInvalidRowCount() > 0) {
+				System.err.println("Skipped " + processor.getInvalidRowCount() + " invalid rows of " + fileName
+						+ " between bytes " + starts.get(first) + " and " + starts.get(last) + ", the first: "
+						+ processor.getFirstInvalidRow());
+			}
+			return builder;
+		}
+	}
+	
+	/**
+	 * Reads a byte range of a file with positional reads, so the ranges of a shared channel can be read concurrently.
+	 */
+	private static class RangeInputStream extends InputStream {
+		
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		private long position;
+		private final long end;
+		
+		RangeInputStream(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+			buffer.limit(0);
+		}
+		
+		@Override
+		public int read() {
+			return fill() ? buffer.get() & 0xFF : -1;
+		}
+		
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+		
+		private boolean fill() {
+			if (buffer.hasRemaining()) {
+				return true;
+			}
+			if (position >= end) {
+				return false;
+			}
+			
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), end - position));
+			try {
+				int read = channel.read(buffer, position);
+				if (read <= 0) {
+					buffer.limit(0);
+					return false;
+				}
+				position += read;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			buffer.flip();
+			return true;
+		}
+	}
+}
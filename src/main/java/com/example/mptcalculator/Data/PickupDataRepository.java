@@ -0,0 +1,99 @@
+package com.example.mptcalculator.Data;
+
+import java.util.List;
+
+/**
+ * Holds the current {@link PickupDataset} shared by every UI.
+ * <p>
+ * Datasets are immutable, so new pickups replace the current dataset instead of changing it,
+ * and a query keeps using the dataset it started with. Query results are cached until the dataset is replaced.
+ * Approximate queries are answered with the repository's {@link PickupTimeSketch}, and live queries from a
+ * {@link SlidingWindowMedian} over the latest pickups.
+ */
+public class PickupDataRepository {
+	
+	private final PickupTimeCache cache = new PickupTimeCache();
+	private final PickupTimeSketch sketch;
+	private final SlidingWindowMedian liveWindow = new SlidingWindowMedian(SlidingWindowMedian.DEFAULT_WINDOW_SECONDS);
+	private volatile PickupDataset dataset;
+	private volatile String loadError;
+	
+	public PickupDataRepository() {
+		this(new PickupTimeSketch(PickupTimeSketch.DEFAULT_RELATIVE_ACCURACY));
+	}
+	
+	public PickupDataRepository(PickupTimeSketch sketch) {
+		this.sketch = sketch;
+	}
+	
+	/**
+	 * @return the current dataset, or null if no data could be loaded yet
+	 */
+	public PickupDataset getDataset() {
+		return dataset;
+	}
+	
+	public synchronized void setDataset(PickupDataset dataset) {
+		this.dataset = dataset;
+		this.loadError = null;
+		cache.clear();
+		liveWindow.reset(dataset.getStore());
+	}
+	
+	/**
+	 * Adds new pickups to the current dataset and the live window.
+	 */
+	public synchronized void append(PickupStore.Builder pickups) {
+		PickupStore rows = pickups.build();
+		this.dataset = dataset.append(rows);
+		cache.clear();
+		liveWindow.addAll(rows);
+	}
+	
+	/**
+	 * @return the result of the query on the current dataset, or null if no data could be loaded yet
+	 */
+	public PickupTimeResult query(PickupTimeQuery query) {
+		PickupDataset current = dataset;
+		return current == null ? null : cache.get(current, query, sketch);
+	}
+	
+	/**
+	 * @return the results of the queries on the current dataset, in the order of the list, or null if no data
+	 * could be loaded yet
+	 */
+	public List<PickupTimeResult> queryAll(List<PickupTimeQuery> queries) {
+		PickupDataset current = dataset;
+		return current == null ? null : cache.getAll(current, queries, sketch);
+	}
+	
+	/**
+	 * @return the median pickup times of the last {@link SlidingWindowMedian#getWindowSeconds()} of pickups
+	 */
+	public PickupTimeResult queryLive() {
+		return liveWindow.medianPickupTimes();
+	}
+	
+	public SlidingWindowMedian getLiveWindow() {
+		return liveWindow;
+	}
+	
+	public PickupTimeSketch getSketch() {
+		return sketch;
+	}
+	
+	public PickupTimeCache getCache() {
+		return cache;
+	}
+	
+	/**
+	 * @return the reason why the last load of the data failed, or null if it succeeded
+	 */
+	public String getLoadError() {
+		return loadError;
+	}
+	
+	public void setLoadError(String loadError) {
+		this.loadError = loadError;
+	}
+}
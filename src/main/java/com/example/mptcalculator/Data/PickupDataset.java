@@ -0,0 +1,576 @@
+package com.example.mptcalculator.Data;
+
+import com.example.mptcalculator.Utils.Coordinate;
+import com.example.mptcalculator.Utils.LocationGridIndex;
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Immutable in-memory copy of pickup_times.csv and locations.csv.
+ * <p>
+ * A dataset is loaded once and shared by every UI, so it is never modified: {@link #append(PickupStore.Builder)}
+ * returns a new dataset instead.
+ */
+public class PickupDataset {
+	
+	public static final String PICKUP_TIMES_FILE = "pickup_times.csv";
+	public static final String LOCATIONS_FILE = "locations.csv";
+	public static final String SNAPSHOT_FILE = "pickup_data.snapshot";
+	
+	private static final long SECONDS_PER_HOUR = PickupHistograms.SECONDS_PER_HOUR;
+	private static final long SECONDS_PER_DAY = PickupHistograms.SECONDS_PER_DAY;
+	
+	private final PickupStore store;
+	private final PickupHistograms histograms;
+	private final Map<Long, Coordinate> locations;
+	private final LocationGridIndex locationIndex;
+	// built on the first approximate query
+	private volatile PickupHistograms approximateHistograms;
+	
+	PickupDataset(PickupStore store, Map<Long, Coordinate> locations) {
+		this(store, new PickupHistograms(store), locations);
+	}
+	
+	PickupDataset(PickupStore store, PickupHistograms histograms, Map<Long, Coordinate> locations) {
+		this(store, histograms, null, Collections.unmodifiableMap(locations), new LocationGridIndex(locations));
+	}
+	
+	private PickupDataset(PickupStore store, PickupHistograms histograms, PickupHistograms approximateHistograms,
+			Map<Long, Coordinate> locations, LocationGridIndex locationIndex) {
+		this.store = store;
+		this.histograms = histograms;
+		this.approximateHistograms = approximateHistograms;
+		this.locations = locations;
+		this.locationIndex = locationIndex;
+	}
+	
+	/**
+	 * Reads the data from the given directory up to the byte position pickupTimesEnd of pickup_times.csv.
+	 * A current {@link PickupSnapshot} is mapped and only the rows after it are parsed, otherwise pickup_times.csv
+	 * and locations.csv are parsed.
+	 */
+	public static PickupDataset load(File dataDirectory, long pickupTimesEnd) throws IOException {
+		File snapshotFile = new File(dataDirectory, SNAPSHOT_FILE);
+		if (snapshotFile.isFile()) {
+			PickupDataset dataset = PickupSnapshot.read(snapshotFile, dataDirectory, pickupTimesEnd);
+			if (dataset != null) {
+				return dataset;
+			}
+		}
+		return parse(dataDirectory, pickupTimesEnd);
+	}
+	
+	/**
+	 * Parses pickup_times.csv and locations.csv from the given directory.
+	 */
+	public static PickupDataset parse(File dataDirectory) throws IOException {
+		return parse(dataDirectory, Long.MAX_VALUE);
+	}
+	
+	static PickupDataset parse(File dataDirectory, long pickupTimesEnd) throws IOException {
+		File pickupTimesFile = new File(dataDirectory, PICKUP_TIMES_FILE);
+		checkFile(pickupTimesFile);
+		PickupStore store = new ParallelPickupLoader(ForkJoinPool.commonPool())
+				.parse(pickupTimesFile, 0, pickupTimesEnd).build();
+		
+		File locationsFile = new File(dataDirectory, LOCATIONS_FILE);
+		checkFile(locationsFile);
+		LocationsProcessor locationsProcessor = new LocationsProcessor();
+		CsvParserSettings settings = new CsvParserSettings();
+		settings.setHeaderExtractionEnabled(true);
+		settings.selectFields(LocationsProcessor.FIELDS);
+		settings.setProcessor(locationsProcessor);
+		new CsvParser(settings).parse(locationsFile);
+		
+		return new PickupDataset(store, locationsProcessor.getLocations());
+	}
+	
+	/**
+	 * Returns a new dataset with the given pickups added, updating only the histograms they fall into.
+	 */
+	public PickupDataset append(PickupStore.Builder pickups) {
+		return append(pickups.build());
+	}
+	
+	public PickupDataset append(PickupStore rows) {
+		PickupStore appended = store.append(rows);
+		PickupHistograms approximate = approximateHistograms;
+		return new PickupDataset(appended, histograms.append(appended, rows),
+				approximate == null ? null : approximate.append(appended, rows), locations, locationIndex);
+	}
+	
+	private static void checkFile(File file) throws FileNotFoundException {
+		if (!file.exists() || !file.isFile()) {
+			throw new FileNotFoundException("File " + file.getName() + " not found");
+		}
+	}
+	
+	public Coordinate getLocation(long id) {
+		return locations.get(id);
+	}
+	
+	public Map<Long, Coordinate> getLocations() {
+		return locations;
+	}
+	
+	public LocationGridIndex getLocationIndex() {
+		return locationIndex;
+	}
+	
+	public PickupStore getStore() {
+		return store;
+	}
+	
+	PickupHistograms getHistograms() {
+		return histograms;
+	}
+	
+	public PickupTimeResult query(PickupTimeQuery query) {
+		return query(query, null);
+	}
+	
+	/**
+	 * Answers an approximate query from histograms with the bins of the given sketch, and any other query exactly.
+	 */
+	public PickupTimeResult query(PickupTimeQuery query, PickupTimeSketch sketch) {
+		PickupHistograms queried = query.isApproximate() && sketch != null ? getApproximateHistograms(sketch) : histograms;
+		return pickupTimes(queried, query);
+	}
+	
+	/**
+	 * Answers several queries on this dataset, in the order of the list. Identical queries are calculated once, and
+	 * every window is read from the same histograms, so a batch of many short windows costs a few histogram lookups
+	 * per window instead of a scan of its pickups.
+	 */
+	public List<PickupTimeResult> query(List<PickupTimeQuery> queries, PickupTimeSketch sketch) {
+		PickupHistograms approximate = null;
+		Map<PickupTimeQuery, PickupTimeResult> distinct = new HashMap<>();
+		List<PickupTimeResult> results = new ArrayList<>(queries.size());
+		for (PickupTimeQuery query : queries) {
+			PickupTimeResult result = distinct.get(query);
+			if (result == null) {
+				PickupHistograms queried = histograms;
+				if (query.isApproximate() && sketch != null) {
+					if (approximate == null) {
+						approximate = getApproximateHistograms(sketch);
+					}
+					queried = approximate;
+				}
+				result = pickupTimes(queried, query);
+				distinct.put(query, result);
+			}
+			results.add(result);
+		}
+		return results;
+	}
+	
+	private PickupHistograms getApproximateHistograms(PickupTimeSketch sketch) {
+		PickupHistograms approximate = approximateHistograms;
+		if (approximate == null || approximate.getSketch() != sketch) {
+			approximate = new PickupHistograms(store, sketch);
+			approximateHistograms = approximate;
+		}
+		return approximate;
+	}
+	
+	/**
+	 * Calculates the median pickup time of every location between startingHour and endingHour of the given date.
+	 * An endingHour of 0 means midnight at the end of the day.
+	 */
+	public PickupTimeResult medianPickupTimes(LocalDate date, int startingHour, int endingHour) {
+		return query(new PickupTimeQuery(date, startingHour, endingHour));
+	}
+	
+	/**
+	 * Calculates the median and the percentiles of every location in the window of the query.
+	 * <p>
+	 * The window is translated into ranges of UTC seconds of UTC days. The pickups of the whole hours of a range are
+	 * counted from the histograms, reading at most a block of days however long the range is, and only the pickups
+	 * of the seconds before the first and after the last whole hour are read from the store. The merged histogram of a
+	 * location is then accumulated once, and every percentile is looked up in it.
+	 */
+	private PickupTimeResult pickupTimes(PickupHistograms histograms, PickupTimeQuery query) {
+		List<DailyRange> window = utcRanges(query);
+		int[][] counts = countPickups(histograms, window);
+		OverflowPickups overflow = new OverflowPickups(window, histograms.getMaxPickupTime());
+		
+		// calculate median and percentile times
+		int resultSize = 0;
+		for (int[] histogram : counts) {
+			if (histogram != null) {
+				resultSize++;
+			}
+		}
+		
+		int[] percentiles = query.getPercentiles();
+		long[] locationIds = new long[resultSize];
+		int[] medians = new int[resultSize];
+		int[][] percentileTimes = new int[percentiles.length][resultSize];
+		int index = 0;
+		for (int location = 0; location < counts.length; location++) {
+			if (counts[location] == null) {
+				continue;
+			}
+			
+			RankedPickups pickups = new RankedPickups(histograms, new int[] {location}, counts[location], overflow);
+			medians[index] = pickups.percentile(50);
+			for (int i = 0; i < percentiles.length; i++) {
+				percentileTimes[i][index] = pickups.percentile(percentiles[i]);
+			}
+			locationIds[index] = store.getLocationId(location);
+			index++;
+		}
+		PickupTimeSketch sketch = histograms.getSketch();
+		return new PickupTimeResult(locationIds, medians, percentiles, percentileTimes,
+				sketch == null ? 0 : sketch.getRelativeError());
+	}
+	
+	/**
+	 * Calculates the median pickup time of every group of locations in the window of the query, pooling the pickups
+	 * of a group as if it was one location. The histograms of the members are merged, so a group costs as much as
+	 * one location.
+	 *
+	 * @return the median of every group in the order of the groups, or -1 for a group without pickups in the window
+	 */
+	public int[] pooledMedianPickupTimes(PickupTimeQuery query, PickupTimeSketch sketch, List<long[]> groups) {
+		PickupHistograms queried = query.isApproximate() && sketch != null ? getApproximateHistograms(sketch) : histograms;
+		List<DailyRange> window = utcRanges(query);
+		int[][] counts = countPickups(queried, window);
+		OverflowPickups overflow = new OverflowPickups(window, queried.getMaxPickupTime());
+		
+		int[] medians = new int[groups.size()];
+		for (int group = 0; group < medians.length; group++) {
+			int[] pooled = new int[queried.getBinCount()];
+			int[] members = new int[groups.get(group).length];
+			int memberCount = 0;
+			for (long id : groups.get(group)) {
+				int location = store.indexOf(id);
+				if (location < 0 || counts[location] == null) {
+					continue;
+				}
+				members[memberCount++] = location;
+				for (int bin = 0; bin < pooled.length; bin++) {
+					pooled[bin] += counts[location][bin];
+				}
+			}
+			
+			medians[group] = memberCount == 0 ? -1
+					: new RankedPickups(queried, Arrays.copyOf(members, memberCount), pooled, overflow).percentile(50);
+		}
+		return medians;
+	}
+	
+	/**
+	 * @return the histogram of the pickups of every location in the window, or null for a location without any
+	 */
+	private int[][] countPickups(PickupHistograms histograms, List<DailyRange> window) {
+		int[][] counts = new int[store.getLocationCount()][];
+		for (DailyRange range : window) {
+			long fromHour = (range.fromSecond + SECONDS_PER_HOUR - 1) / SECONDS_PER_HOUR;
+			long toHour = range.toSecond / SECONDS_PER_HOUR;
+			if (fromHour < toHour) {
+				histograms.merge(range.fromDay, range.toDay, (int) fromHour, (int) toHour, counts);
+				// a range of whole hours has no seconds to read from the store
+				boolean countFrom = range.fromSecond < fromHour * SECONDS_PER_HOUR;
+				boolean countTo = toHour * SECONDS_PER_HOUR < range.toSecond;
+				for (long day = range.fromDay; day < range.toDay && (countFrom || countTo); day++) {
+					long dayStart = day * SECONDS_PER_DAY;
+					if (countFrom) {
+						count(histograms, dayStart + range.fromSecond, dayStart + fromHour * SECONDS_PER_HOUR, counts);
+					}
+					if (countTo) {
+						count(histograms, dayStart + toHour * SECONDS_PER_HOUR, dayStart + range.toSecond, counts);
+					}
+				}
+			} else {
+				for (long day = range.fromDay; day < range.toDay; day++) {
+					long dayStart = day * SECONDS_PER_DAY;
+					count(histograms, dayStart + range.fromSecond, dayStart + range.toSecond, counts);
+				}
+			}
+		}
+		return counts;
+	}
+	
+	/**
+	 * Translates the local window of a query into ranges of UTC days.
+	 * <p>
+	 * Consecutive days whose window starts and ends at the same UTC offsets share their ranges, so a date range
+	 * only adds ranges at the offset changes of its time zone. A window that crosses UTC midnight is split at it.
+	 * On days when the clocks change, the window holds the pickups whose local time is in it: it is shorter by the
+	 * times the clocks skip, and the times the clocks repeat are in it twice.
+	 * <p>
+	 * Only the dates whose window can overlap the UTC days of the store are walked, so a range of many years costs
+	 * as much as the days that have pickups.
+	 */
+	private List<DailyRange> utcRanges(PickupTimeQuery query) {
+		List<DailyRange> ranges = new ArrayList<>();
+		if (store.size() == 0) {
+			return ranges;
+		}
+		
+		// the window of a local date lies within the UTC days before and after it
+		LocalDate firstDate = LocalDate.ofEpochDay(Math.floorDiv(store.getTimestamp(0), SECONDS_PER_DAY) - 1);
+		LocalDate lastDate = LocalDate.ofEpochDay(Math.floorDiv(store.getTimestamp(store.size() - 1),
+				SECONDS_PER_DAY) + 1);
+		LocalDate startDate = query.getDate().isBefore(firstDate) ? firstDate : query.getDate();
+		LocalDate endDate = query.getEndDate().isAfter(lastDate) ? lastDate : query.getEndDate();
+		if (startDate.isAfter(endDate)) {
+			return ranges;
+		}
+		
+		ZoneRules rules = query.getZone().getRules();
+		long startingSecond = query.getStartingTime().toSecondOfDay();
+		long endingSecond = query.getEndingTime().equals(LocalTime.MIDNIGHT) ? SECONDS_PER_DAY
+				: query.getEndingTime().toSecondOfDay();
+		LocalDate segmentStart = startDate;
+		long[] segment = null;
+		for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+			long localStart = date.toEpochDay() * SECONDS_PER_DAY;
+			long[] intervals = utcIntervals(rules, localStart + startingSecond, localStart + endingSecond);
+			
+			long shift = (date.toEpochDay() - segmentStart.toEpochDay()) * SECONDS_PER_DAY;
+			if (segment == null) {
+				segment = intervals;
+			} else if (!isShifted(intervals, segment, shift)) {
+				addRanges(ranges, segment, date.toEpochDay() - segmentStart.toEpochDay());
+				segmentStart = date;
+				segment = intervals;
+			}
+		}
+		addRanges(ranges, segment, endDate.toEpochDay() - segmentStart.toEpochDay() + 1);
+		return ranges;
+	}
+	
+	/**
+	 * Finds the seconds whose local time in the zone is from localFrom (inclusive) to localTo (exclusive), both
+	 * local seconds from the epoch.
+	 *
+	 * @return the from (inclusive) and to (exclusive) epoch seconds of the intervals, in order
+	 */
+	private static long[] utcIntervals(ZoneRules rules, long localFrom, long localTo) {
+		if (rules.isFixedOffset()) {
+			int offset = rules.getOffset(Instant.EPOCH).getTotalSeconds();
+			return new long[] {localFrom - offset, localTo - offset};
+		}
+		
+		// walk the offsets of the zone around the window, each of which maps a part of it to UTC
+		long[] intervals = new long[2];
+		int length = 0;
+		long end = localTo - ZoneOffset.MIN.getTotalSeconds();
+		for (long second = localFrom - ZoneOffset.MAX.getTotalSeconds(); second < end; ) {
+			Instant instant = Instant.ofEpochSecond(second);
+			int offset = rules.getOffset(instant).getTotalSeconds();
+			ZoneOffsetTransition transition = rules.nextTransition(instant);
+			long offsetEnd = transition == null ? end : Math.min(transition.toEpochSecond(), end);
+			long from = Math.max(second, localFrom - offset);
+			long to = Math.min(offsetEnd, localTo - offset);
+			if (from < to) {
+				if (length > 0 && intervals[length - 1] == from) {
+					intervals[length - 1] = to;
+				} else {
+					if (length == intervals.length) {
+						intervals = Arrays.copyOf(intervals, 2 * length);
+					}
+					intervals[length++] = from;
+					intervals[length++] = to;
+				}
+			}
+			second = offsetEnd;
+		}
+		return Arrays.copyOf(intervals, length);
+	}
+	
+	private static boolean isShifted(long[] intervals, long[] segment, long shift) {
+		if (intervals.length != segment.length) {
+			return false;
+		}
+		for (int i = 0; i < intervals.length; i++) {
+			if (intervals[i] != segment[i] + shift) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static void addRanges(List<DailyRange> ranges, long[] intervals, long days) {
+		for (int i = 0; i < intervals.length; i += 2) {
+			addRanges(ranges, intervals[i], intervals[i + 1], days);
+		}
+	}
+	
+	/**
+	 * Adds the ranges of the UTC days covered by the seconds from (inclusive) to (exclusive), repeated on the given
+	 * number of days.
+	 */
+	private static void addRanges(List<DailyRange> ranges, long from, long to, long days) {
+		for (long day = Math.floorDiv(from, SECONDS_PER_DAY); day * SECONDS_PER_DAY < to; day++) {
+			long dayStart = day * SECONDS_PER_DAY;
+			long fromSecond = Math.max(from - dayStart, 0);
+			long toSecond = Math.min(to - dayStart, SECONDS_PER_DAY);
+			if (fromSecond < toSecond) {
+				ranges.add(new DailyRange(day, day + days, fromSecond, toSecond));
+			}
+		}
+	}
+	
+	/**
+	 * Adds the pickups from the store between from (inclusive) and to (exclusive) to the per location histograms.
+	 */
+	private void count(PickupHistograms histograms, long from, long to, int[][] counts) {
+		int lastRow = store.lowerBound(to);
+		for (int row = store.lowerBound(from); row < lastRow; row++) {
+			int location = store.getLocation(row);
+			if (counts[location] == null) {
+				counts[location] = new int[histograms.getBinCount()];
+			}
+			counts[location][histograms.bin(store.getPickupTime(row))]++;
+		}
+	}
+	
+	/**
+	 * The seconds from fromSecond to toSecond of every UTC day from fromDay to toDay, counted from the epoch,
+	 * as half-open ranges.
+	 */
+	private static class DailyRange {
+		
+		final long fromDay;
+		final long toDay;
+		final long fromSecond;
+		final long toSecond;
+		
+		DailyRange(long fromDay, long toDay, long fromSecond, long toSecond) {
+			this.fromDay = fromDay;
+			this.toDay = toDay;
+			this.fromSecond = fromSecond;
+			this.toSecond = toSecond;
+		}
+	}
+	
+	/**
+	 * The pickup times of every location in a window that were counted in the overflow bin. They are collected in
+	 * one pass over the pickups of the window when the first rank of a query falls into the overflow bin, and then
+	 * shared by every location and group of the query.
+	 */
+	private class OverflowPickups {
+		
+		private final List<DailyRange> window;
+		private final int maxPickupTime;
+		private int[][] pickupTimes;
+		private int[] sizes;
+		
+		/**
+		 * @param maxPickupTime the longest pickup time below the overflow bin of the queried histograms
+		 */
+		OverflowPickups(List<DailyRange> window, int maxPickupTime) {
+			this.window = window;
+			this.maxPickupTime = maxPickupTime;
+		}
+		
+		/**
+		 * @return the overflowCount pickup times of the given locations that were counted in the overflow bin
+		 */
+		int[] get(int[] locations, int overflowCount) {
+			if (pickupTimes == null) {
+				collect();
+			}
+			
+			int[] overflow = new int[overflowCount];
+			int size = 0;
+			for (int location : locations) {
+				if (sizes[location] > 0) {
+					System.arraycopy(pickupTimes[location], 0, overflow, size, sizes[location]);
+					size += sizes[location];
+				}
+			}
+			return overflow;
+		}
+		
+		private void collect() {
+			pickupTimes = new int[store.getLocationCount()][];
+			sizes = new int[store.getLocationCount()];
+			for (DailyRange range : window) {
+				for (long day = range.fromDay; day < range.toDay; day++) {
+					long dayStart = day * SECONDS_PER_DAY;
+					int lastRow = store.lowerBound(dayStart + range.toSecond);
+					for (int row = store.lowerBound(dayStart + range.fromSecond); row < lastRow; row++) {
+						int pickupTime = store.getPickupTime(row);
+						if (pickupTime > maxPickupTime) {
+							add(store.getLocation(row), pickupTime);
+						}
+					}
+				}
+			}
+		}
+		
+		private void add(int location, int pickupTime) {
+			int[] times = pickupTimes[location];
+			if (times == null) {
+				times = new int[8];
+				pickupTimes[location] = times;
+			} else if (sizes[location] == times.length) {
+				times = Arrays.copyOf(times, 2 * times.length);
+				pickupTimes[location] = times;
+			}
+			times[sizes[location]++] = pickupTime;
+		}
+	}
+	
+	/**
+	 * The pickups of one or more locations in a window, ranked by pickup time.
+	 */
+	private class RankedPickups {
+		
+		private final PickupHistograms histograms;
+		private final int[] locations;
+		private final int[] cumulativeCounts;
+		private final OverflowPickups overflowPickups;
+		private final int size;
+		private int[] overflow;
+		
+		RankedPickups(PickupHistograms histograms, int[] locations, int[] counts, OverflowPickups overflowPickups) {
+			PickupHistograms.accumulate(counts);
+			this.histograms = histograms;
+			this.locations = locations;
+			this.cumulativeCounts = counts;
+			this.overflowPickups = overflowPickups;
+			this.size = counts[counts.length - 1];
+		}
+		
+		int percentile(int percentile) {
+			int lower = valueAtRank(Medians.lowerRank(percentile, size));
+			int upper = valueAtRank(Medians.upperRank(percentile, size));
+			return Medians.percentile(percentile, size, lower, upper);
+		}
+		
+		private int valueAtRank(int rank) {
+			int value = histograms.valueAtRank(cumulativeCounts, rank);
+			if (value >= 0) {
+				return value;
+			}
+			
+			// the rank falls into the overflow bin, so select it from the long pickups
+			if (overflow == null) {
+				overflow = overflowPickups.get(locations, size - cumulativeCounts[histograms.getOverflowBin() - 1]);
+			}
+			return Medians.select(overflow, 0, overflow.length, rank - (size - overflow.length));
+		}
+	}
+}
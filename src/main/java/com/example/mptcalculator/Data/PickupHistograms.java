@@ -0,0 +1,562 @@
+package com.example.mptcalculator.Data;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Pickup time histograms of every location over the days and hours covered by a {@link PickupStore}.
+ * <p>
+ * Exact histograms have a bin {@code i} for the pickups that took {@code i} minutes, up to {@link #MAX_PICKUP_TIME}.
+ * Longer pickups are only counted in the last bin, {@link #OVERFLOW_BIN}, which keeps the histograms small whatever
+ * the outliers are. Approximate histograms use the logarithmic bins of a {@link PickupTimeSketch} instead.
+ * <p>
+ * The days are cut into blocks of {@link #BLOCK_DAYS}. For every location, a block keeps the counts of its pickups
+ * per day, hour and bin sparsely, as sorted keys and their counts, and a checkpoint: for every hour of the day h,
+ * the histogram of the pickups before the block and up to hour h of their day. The pickups of a range of days
+ * within a range of hours are counted either from the keys of its days, or from the checkpoints nearest to its
+ * ends and the keys of at most half a block of days at each end, whichever reads fewer days.
+ * <p>
+ * A location then takes a checkpoint of {@code 24 * bins} counts per block, and a key and a count per day, hour
+ * and bin with pickups, which is at most two counts per pickup.
+ */
+public class PickupHistograms {
+	
+	public static final int MAX_PICKUP_TIME = 120;
+	public static final int OVERFLOW_BIN = MAX_PICKUP_TIME + 1;
+	public static final int BINS = OVERFLOW_BIN + 1;
+	public static final int BLOCK_DAYS = 32;
+	
+	static final long SECONDS_PER_HOUR = 3600;
+	static final int HOURS_PER_DAY = 24;
+	static final long SECONDS_PER_DAY = HOURS_PER_DAY * SECONDS_PER_HOUR;
+	
+	private final PickupTimeSketch sketch;
+	private final int binCount;
+	private final long firstDay;
+	private final int dayCount;
+	private final long[] locationIds;
+	// per location and block, and after the last block, null while the location has no pickups before it
+	private final int[][][] checkpoints;
+	// per location and block, the keys (day in block * 24 + hour) * bins + bin, or null if it has no pickups in it
+	private final int[][][] keys;
+	private final int[][][] counts;
+	
+	private PickupHistograms(PickupTimeSketch sketch, long firstDay, int dayCount, long[] locationIds,
+			int[][][] checkpoints, int[][][] keys, int[][][] counts) {
+		this.sketch = sketch;
+		this.binCount = sketch == null ? BINS : sketch.getBinCount();
+		this.firstDay = firstDay;
+		this.dayCount = dayCount;
+		this.locationIds = locationIds;
+		this.checkpoints = checkpoints;
+		this.keys = keys;
+		this.counts = counts;
+	}
+	
+	public PickupHistograms(PickupStore store) {
+		this(store, null);
+	}
+	
+	/**
+	 * Creates approximate histograms with the bins of the sketch, or exact histograms if the sketch is null.
+	 */
+	public PickupHistograms(PickupStore store, PickupTimeSketch sketch) {
+		this.sketch = sketch;
+		binCount = sketch == null ? BINS : sketch.getBinCount();
+		if (store.size() == 0) {
+			firstDay = 0;
+			dayCount = 0;
+		} else {
+			firstDay = Math.floorDiv(store.getTimestamp(0), SECONDS_PER_DAY);
+			dayCount = (int) (Math.floorDiv(store.getTimestamp(store.size() - 1), SECONDS_PER_DAY) - firstDay + 1);
+		}
+		
+		int locationCount = store.getLocationCount();
+		locationIds = new long[locationCount];
+		for (int location = 0; location < locationCount; location++) {
+			locationIds[location] = store.getLocationId(location);
+		}
+		
+		// collect the keys of the pickups of every location, counted from the first day
+		int[] sizes = new int[locationCount];
+		for (int row = 0; row < store.size(); row++) {
+			sizes[store.getLocation(row)]++;
+		}
+		int[][] pickupKeys = new int[locationCount][];
+		for (int location = 0; location < locationCount; location++) {
+			pickupKeys[location] = new int[sizes[location]];
+			sizes[location] = 0;
+		}
+		for (int row = 0; row < store.size(); row++) {
+			int location = store.getLocation(row);
+			pickupKeys[location][sizes[location]++] = key(store.getTimestamp(row), store.getPickupTime(row));
+		}
+		
+		int blockCount = blockCount(dayCount);
+		checkpoints = new int[locationCount][blockCount + 1][];
+		keys = new int[locationCount][blockCount][];
+		counts = new int[locationCount][blockCount][];
+		for (int location = 0; location < locationCount; location++) {
+			Arrays.sort(pickupKeys[location]);
+			addKeys(location, pickupKeys[location], pickupKeys[location].length);
+			updateCheckpoints(location, 1);
+		}
+	}
+	
+	/**
+	 * Returns the histograms of a store that was created by appending rows to the store of these histograms.
+	 * Only the blocks of the locations with appended pickups are copied, and the checkpoints after them, so
+	 * appending the latest pickups copies a block per location. The histograms are rebuilt when the rows add
+	 * pickups before the first day.
+	 */
+	public PickupHistograms append(PickupStore store, PickupStore appended) {
+		if (dayCount == 0
+				|| (appended.size() > 0 && Math.floorDiv(appended.getTimestamp(0), SECONDS_PER_DAY) < firstDay)) {
+			return new PickupHistograms(store, sketch);
+		}
+		if (appended.size() == 0 && store.getLocationCount() == locationIds.length) {
+			return this;
+		}
+		
+		int newDayCount = appended.size() == 0 ? dayCount : (int) Math.max(dayCount,
+				Math.floorDiv(appended.getTimestamp(appended.size() - 1), SECONDS_PER_DAY) - firstDay + 1);
+		int blockCount = blockCount(newDayCount);
+		int locationCount = store.getLocationCount();
+		long[] newLocationIds = new long[locationCount];
+		int[][][] newCheckpoints = new int[locationCount][][];
+		int[][][] newKeys = new int[locationCount][][];
+		int[][][] newCounts = new int[locationCount][][];
+		int[] copiedBlocks = new int[locationCount];
+		
+		// share the blocks of every location, which new locations add to the store in the order of their ids
+		for (int location = 0; location < locationCount; location++) {
+			newLocationIds[location] = store.getLocationId(location);
+			int previous = Arrays.binarySearch(locationIds, newLocationIds[location]);
+			if (previous >= 0) {
+				newCheckpoints[location] = Arrays.copyOf(checkpoints[previous], blockCount + 1);
+				newKeys[location] = Arrays.copyOf(keys[previous], blockCount);
+				newCounts[location] = Arrays.copyOf(counts[previous], blockCount);
+				copiedBlocks[location] = blockCount(dayCount);
+			} else {
+				newCheckpoints[location] = new int[blockCount + 1][];
+				newKeys[location] = new int[blockCount][];
+				newCounts[location] = new int[blockCount][];
+			}
+		}
+		PickupHistograms histograms = new PickupHistograms(sketch, firstDay, newDayCount, newLocationIds,
+				newCheckpoints, newKeys, newCounts);
+		
+		// collect the keys of the appended pickups of every location
+		int[] sizes = new int[locationCount];
+		int[][] pickupKeys = new int[locationCount][];
+		for (int row = 0; row < appended.size(); row++) {
+			int location = store.indexOf(appended.getLocationId(appended.getLocation(row)));
+			if (pickupKeys[location] == null) {
+				pickupKeys[location] = new int[8];
+			} else if (sizes[location] == pickupKeys[location].length) {
+				pickupKeys[location] = Arrays.copyOf(pickupKeys[location], 2 * sizes[location]);
+			}
+			pickupKeys[location][sizes[location]++] = key(appended.getTimestamp(row), appended.getPickupTime(row));
+		}
+		
+		// then add them to copies of their blocks and of the checkpoints after them, and calculate the checkpoints
+		// of new blocks
+		for (int location = 0; location < locationCount; location++) {
+			if (pickupKeys[location] != null) {
+				Arrays.sort(pickupKeys[location], 0, sizes[location]);
+				histograms.addKeys(location, pickupKeys[location], sizes[location]);
+				histograms.addToCheckpoints(location, pickupKeys[location], sizes[location], copiedBlocks[location]);
+			}
+			histograms.updateCheckpoints(location, copiedBlocks[location] + 1);
+		}
+		return histograms;
+	}
+	
+	/**
+	 * @return the number of bytes that {@link #write(ByteBuffer)} writes
+	 */
+	long byteSize() {
+		long ints = 0;
+		for (int location = 0; location < keys.length; location++) {
+			for (int block = 0; block < keys[location].length; block++) {
+				ints += 1 + (keys[location][block] == null ? 0 : 2 * keys[location][block].length);
+			}
+			for (int block = 0; block < checkpoints[location].length; block++) {
+				boolean written = checkpoints[location][block] != null && !isShared(location, block);
+				ints += 1 + (written ? HOURS_PER_DAY * binCount : 0);
+			}
+		}
+		return Long.BYTES + 2 * Integer.BYTES + ints * Integer.BYTES;
+	}
+	
+	/**
+	 * Writes the first day, the number of days and bins, and then for every location the keys and counts of its
+	 * blocks and its checkpoints. The length of the keys is -1 for a block without pickups, and a checkpoint starts
+	 * with 0 if it is empty, 1 if it is the same as the checkpoint before and 2 if its counts follow.
+	 */
+	void write(ByteBuffer buffer) {
+		buffer.putLong(firstDay);
+		buffer.putInt(dayCount);
+		buffer.putInt(binCount);
+		IntBuffer ints = buffer.asIntBuffer();
+		for (int location = 0; location < keys.length; location++) {
+			for (int block = 0; block < keys[location].length; block++) {
+				int[] blockKeys = keys[location][block];
+				ints.put(blockKeys == null ? -1 : blockKeys.length);
+				if (blockKeys != null) {
+					ints.put(blockKeys);
+					ints.put(counts[location][block]);
+				}
+			}
+			for (int block = 0; block < checkpoints[location].length; block++) {
+				if (checkpoints[location][block] == null) {
+					ints.put(0);
+				} else if (isShared(location, block)) {
+					ints.put(1);
+				} else {
+					ints.put(2);
+					ints.put(checkpoints[location][block]);
+				}
+			}
+		}
+		buffer.position(buffer.position() + ints.position() * Integer.BYTES);
+	}
+	
+	/**
+	 * Reads exact histograms written by {@link #write(ByteBuffer)} for a store with the given location ids.
+	 *
+	 * @return the histograms, or null if they were written with other bins
+	 * @throws BufferUnderflowException if the buffer ends before the histograms
+	 */
+	static PickupHistograms read(ByteBuffer buffer, long[] locationIds) {
+		long firstDay = buffer.getLong();
+		int dayCount = buffer.getInt();
+		if (buffer.getInt() != BINS) {
+			return null;
+		}
+		
+		int blockCount = blockCount(dayCount);
+		int[][][] checkpoints = new int[locationIds.length][blockCount + 1][];
+		int[][][] keys = new int[locationIds.length][blockCount][];
+		int[][][] counts = new int[locationIds.length][blockCount][];
+		IntBuffer ints = buffer.asIntBuffer();
+		for (int location = 0; location < locationIds.length; location++) {
+			for (int block = 0; block < blockCount; block++) {
+				int length = ints.get();
+				if (length > ints.remaining() / 2) {
+					throw new BufferUnderflowException();
+				}
+				if (length >= 0) {
+					keys[location][block] = new int[length];
+					counts[location][block] = new int[length];
+					ints.get(keys[location][block]);
+					ints.get(counts[location][block]);
+				}
+			}
+			for (int block = 0; block <= blockCount; block++) {
+				int kind = ints.get();
+				if (kind == 1) {
+					checkpoints[location][block] = checkpoints[location][block - 1];
+				} else if (kind == 2) {
+					checkpoints[location][block] = new int[HOURS_PER_DAY * BINS];
+					ints.get(checkpoints[location][block]);
+				}
+			}
+		}
+		buffer.position(buffer.position() + ints.position() * Integer.BYTES);
+		return new PickupHistograms(null, firstDay, dayCount, locationIds, checkpoints, keys, counts);
+	}
+	
+	private boolean isShared(int location, int block) {
+		return block > 0 && checkpoints[location][block] != null
+				&& checkpoints[location][block] == checkpoints[location][block - 1];
+	}
+	
+	/**
+	 * @return the sketch of approximate histograms, or null for exact histograms
+	 */
+	public PickupTimeSketch getSketch() {
+		return sketch;
+	}
+	
+	public int getBinCount() {
+		return binCount;
+	}
+	
+	public int bin(int pickupTime) {
+		return sketch == null ? Math.min(pickupTime, OVERFLOW_BIN) : sketch.bin(pickupTime);
+	}
+	
+	/**
+	 * @return the last bin, which counts the pickups longer than {@link #getMaxPickupTime()}
+	 */
+	public int getOverflowBin() {
+		return sketch == null ? OVERFLOW_BIN : sketch.getOverflowBin();
+	}
+	
+	/**
+	 * @return the longest pickup time that is counted in a bin of its own
+	 */
+	public int getMaxPickupTime() {
+		return sketch == null ? MAX_PICKUP_TIME : PickupTimeSketch.MAX_PICKUP_TIME;
+	}
+	
+	/**
+	 * Adds the pickups of the days from fromDay (inclusive) to toDay (exclusive), counted from the epoch, between
+	 * the hours of the day fromHour (inclusive) and toHour (exclusive) to the per location counts.
+	 * The counts of a location are created when it has pickups in that range.
+	 */
+	public void merge(long fromDay, long toDay, int fromHour, int toHour, int[][] counts) {
+		int first = (int) Math.min(Math.max(fromDay - firstDay, 0), dayCount);
+		int last = (int) Math.min(Math.max(toDay - firstDay, 0), dayCount);
+		if (first >= last || fromHour >= toHour) {
+			return;
+		}
+		
+		int[] range = new int[binCount];
+		boolean direct = last - first <= distanceToCheckpoint(first) + distanceToCheckpoint(last);
+		for (int location = 0; location < keys.length; location++) {
+			boolean found;
+			if (direct) {
+				found = addDays(location, first, last, fromHour, toHour, range, 1);
+			} else {
+				found = addBefore(location, last, fromHour, toHour, range, 1);
+				addBefore(location, first, fromHour, toHour, range, -1);
+			}
+			if (!found) {
+				continue;
+			}
+			
+			int total = 0;
+			for (int bin = 0; bin < binCount; bin++) {
+				total += range[bin];
+			}
+			if (total > 0) {
+				if (counts[location] == null) {
+					counts[location] = new int[binCount];
+				}
+				for (int bin = 0; bin < binCount; bin++) {
+					counts[location][bin] += range[bin];
+				}
+			}
+			Arrays.fill(range, 0);
+		}
+	}
+	
+	/**
+	 * Adds the pickups of a location before the given day, counted from the first day, between the hours of the day
+	 * to the range, multiplied by sign. They are counted from the nearest checkpoint, adding the pickups of the days
+	 * after a checkpoint before the day, or subtracting those of the days from the day until a checkpoint.
+	 *
+	 * @return whether the location has any pickups before that checkpoint
+	 */
+	private boolean addBefore(int location, int day, int fromHour, int toHour, int[] range, int sign) {
+		int block = day / BLOCK_DAYS;
+		boolean forward = day - block * BLOCK_DAYS <= BLOCK_DAYS / 2;
+		int checkpointBlock = forward ? block : block + 1;
+		int[] checkpoint = checkpoints[location][checkpointBlock];
+		if (checkpoint != null) {
+			for (int bin = 0; bin < binCount; bin++) {
+				int count = checkpoint[(toHour - 1) * binCount + bin];
+				if (fromHour > 0) {
+					count -= checkpoint[(fromHour - 1) * binCount + bin];
+				}
+				range[bin] += sign * count;
+			}
+		}
+		if (day == checkpointBlock * BLOCK_DAYS) {
+			return checkpoint != null;
+		}
+		return (forward ? addDays(location, block * BLOCK_DAYS, day, fromHour, toHour, range, sign)
+				: addDays(location, day, checkpointBlock * BLOCK_DAYS, fromHour, toHour, range, -sign))
+				|| checkpoint != null;
+	}
+	
+	/**
+	 * Adds the pickups of a location on the days from fromDay (inclusive) to toDay (exclusive), counted from the
+	 * first day, between the hours of the day to the range, multiplied by sign.
+	 *
+	 * @return whether the location has any pickups in the blocks of those days
+	 */
+	private boolean addDays(int location, int fromDay, int toDay, int fromHour, int toHour, int[] range, int sign) {
+		boolean found = false;
+		for (int day = fromDay; day < toDay; ) {
+			int block = day / BLOCK_DAYS;
+			int blockEnd = Math.min((block + 1) * BLOCK_DAYS, toDay);
+			int[] blockKeys = keys[location][block];
+			if (blockKeys != null) {
+				found = true;
+				int[] blockCounts = counts[location][block];
+				int index = 0;
+				for (int blockDay = day - block * BLOCK_DAYS; blockDay < blockEnd - block * BLOCK_DAYS; blockDay++) {
+					int toKey = (blockDay * HOURS_PER_DAY + toHour) * binCount;
+					index = lowerBound(blockKeys, index, (blockDay * HOURS_PER_DAY + fromHour) * binCount);
+					for (; index < blockKeys.length && blockKeys[index] < toKey; index++) {
+						range[blockKeys[index] % binCount] += sign * blockCounts[index];
+					}
+				}
+			}
+			day = blockEnd;
+		}
+		return found;
+	}
+	
+	/**
+	 * Adds sorted keys of pickups, counted from the first day, to copies of the blocks of a location.
+	 */
+	private void addKeys(int location, int[] pickupKeys, int size) {
+		int from = 0;
+		while (from < size) {
+			int block = pickupKeys[from] / blockKeys();
+			int offset = block * blockKeys();
+			int to = from;
+			int distinct = 0;
+			while (to < size && pickupKeys[to] < offset + blockKeys()) {
+				if (to == from || pickupKeys[to] != pickupKeys[to - 1]) {
+					distinct++;
+				}
+				to++;
+			}
+			
+			// merge the distinct keys and their counts with the keys of the block
+			int[] oldKeys = keys[location][block] == null ? new int[0] : keys[location][block];
+			int[] oldCounts = counts[location][block];
+			int[] newKeys = new int[oldKeys.length + distinct];
+			int[] newCounts = new int[newKeys.length];
+			int merged = 0;
+			int i = 0;
+			int j = from;
+			while (i < oldKeys.length || j < to) {
+				int key = j == to || (i < oldKeys.length && oldKeys[i] < pickupKeys[j] - offset)
+						? oldKeys[i] : pickupKeys[j] - offset;
+				if (merged == 0 || newKeys[merged - 1] != key) {
+					newKeys[merged++] = key;
+				}
+				if (i < oldKeys.length && oldKeys[i] == key) {
+					newCounts[merged - 1] += oldCounts[i++];
+				} else {
+					newCounts[merged - 1]++;
+					j++;
+				}
+			}
+			keys[location][block] = Arrays.copyOf(newKeys, merged);
+			counts[location][block] = Arrays.copyOf(newCounts, merged);
+			from = to;
+		}
+	}
+	
+	/**
+	 * Adds keys of pickups, counted from the first day, to copies of the checkpoints of a location after their
+	 * blocks, up to the given block.
+	 */
+	private void addToCheckpoints(int location, int[] pickupKeys, int size, int toBlock) {
+		int firstBlock = pickupKeys[0] / blockKeys() + 1;
+		for (int block = firstBlock; block <= toBlock; block++) {
+			int[] checkpoint = checkpoints[location][block] == null ? new int[HOURS_PER_DAY * binCount]
+					: checkpoints[location][block].clone();
+			for (int i = 0; i < size && pickupKeys[i] < block * blockKeys(); i++) {
+				int bin = pickupKeys[i] % binCount;
+				for (int hour = pickupKeys[i] / binCount % HOURS_PER_DAY; hour < HOURS_PER_DAY; hour++) {
+					checkpoint[hour * binCount + bin]++;
+				}
+			}
+			checkpoints[location][block] = checkpoint;
+		}
+	}
+	
+	/**
+	 * Calculates the checkpoints of a location from the given block on from the checkpoint and the keys of the
+	 * block before each.
+	 */
+	private void updateCheckpoints(int location, int fromBlock) {
+		for (int block = fromBlock; block < checkpoints[location].length; block++) {
+			int[] previous = checkpoints[location][block - 1];
+			int[] previousKeys = keys[location][block - 1];
+			if (previousKeys == null) {
+				checkpoints[location][block] = previous;
+				continue;
+			}
+			
+			int[] checkpoint = previous == null ? new int[HOURS_PER_DAY * binCount] : previous.clone();
+			int[] previousCounts = counts[location][block - 1];
+			for (int i = 0; i < previousKeys.length; i++) {
+				int bin = previousKeys[i] % binCount;
+				for (int hour = previousKeys[i] / binCount % HOURS_PER_DAY; hour < HOURS_PER_DAY; hour++) {
+					checkpoint[hour * binCount + bin] += previousCounts[i];
+				}
+			}
+			checkpoints[location][block] = checkpoint;
+		}
+	}
+	
+	private int key(long timestamp, int pickupTime) {
+		int day = (int) (Math.floorDiv(timestamp, SECONDS_PER_DAY) - firstDay);
+		return (day * HOURS_PER_DAY + hourOfDay(timestamp)) * binCount + bin(pickupTime);
+	}
+	
+	private static int distanceToCheckpoint(int day) {
+		int offset = day % BLOCK_DAYS;
+		return Math.min(offset, BLOCK_DAYS - offset);
+	}
+	
+	private int blockKeys() {
+		return BLOCK_DAYS * HOURS_PER_DAY * binCount;
+	}
+	
+	private static int blockCount(int dayCount) {
+		return (dayCount + BLOCK_DAYS - 1) / BLOCK_DAYS;
+	}
+	
+	private static int lowerBound(int[] values, int from, int value) {
+		int low = from;
+		int high = values.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	private static int hourOfDay(long timestamp) {
+		return (int) (Math.floorMod(timestamp, SECONDS_PER_DAY) / SECONDS_PER_HOUR);
+	}
+	
+	/**
+	 * Turns a histogram into cumulative counts in place, so that any number of ranks can be looked up with
+	 * {@link #valueAtRank(int[], int)} without walking the bins again. The last count is then the total.
+	 */
+	public static void accumulate(int[] counts) {
+		for (int bin = 1; bin < counts.length; bin++) {
+			counts[bin] += counts[bin - 1];
+		}
+	}
+	
+	/**
+	 * @return the pickup time with the given zero based rank in {@link #accumulate(int[]) cumulative} counts,
+	 * estimated for approximate histograms, or -1 if it falls into the {@link #getOverflowBin() overflow bin}
+	 */
+	public int valueAtRank(int[] cumulativeCounts, int rank) {
+		// find the first bin that counts more pickups than the rank
+		int low = 0;
+		int high = binCount - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cumulativeCounts[middle] > rank) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		
+		if (low == getOverflowBin()) {
+			return -1;
+		}
+		return sketch == null ? low : sketch.value(low);
+	}
+}
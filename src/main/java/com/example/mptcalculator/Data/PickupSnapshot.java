@@ -0,0 +1,309 @@
+package com.example.mptcalculator.Data;
+
+import com.example.mptcalculator.Utils.Coordinate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary snapshot of a {@link PickupDataset}, which is memory-mapped instead of parsed on startup.
+ * <p>
+ * The file is little-endian and starts with a header of six ints: the magic number, the format version, the number
+ * of coordinates, the number of location ids, the number of rows and the length of the file key. They are followed
+ * by the source of the snapshot: the byte position up to which pickup_times.csv was read, the modification time of
+ * locations.csv, a checksum of the bytes of pickup_times.csv before that position and its file key, padded to eight
+ * bytes, and the size of the histograms. Then come the coordinates (id, longitude, latitude), the location ids of
+ * the store, the timestamp, location and pickup time columns and the exact {@link PickupHistograms} of the store.
+ * The columns of the store are read in place from the mapped file, and the histograms are copied from it instead of
+ * being counted again.
+ * <p>
+ * A snapshot stays current while pickup_times.csv is the same file and only grows, and locations.csv is unchanged.
+ * The rows appended to pickup_times.csv since the snapshot was written are then parsed on top of it.
+ * <p>
+ * Run {@link #main(String[])} once to convert the CSV files of a data directory.
+ */
+public class PickupSnapshot {
+	
+	private static final int MAGIC = 0x4D505453;
+	private static final int VERSION = 3;
+	private static final int HEADER_SIZE = 6 * Integer.BYTES + 4 * Long.BYTES;
+	private static final int COORDINATE_SIZE = Long.BYTES + 2 * Double.BYTES;
+	// the bytes before the read position of pickup_times.csv that are checked for changes
+	private static final int CHECKSUM_BYTES = 4096;
+	
+	private PickupSnapshot() {
+	}
+	
+	/**
+	 * Converts pickup_times.csv and locations.csv to a snapshot.
+	 * <p>
+	 * Arguments: the data directory, and optionally the snapshot file, which defaults to
+	 * {@link PickupDataset#SNAPSHOT_FILE} in the data directory.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: PickupSnapshot <data directory> [snapshot file]");
+			System.exit(1);
+		}
+		
+		File dataDirectory = new File(args[0]);
+		File snapshotFile = args.length > 1 ? new File(args[1]) : new File(dataDirectory, PickupDataset.SNAPSHOT_FILE);
+		
+		File pickupTimesFile = new File(dataDirectory, PickupDataset.PICKUP_TIMES_FILE);
+		Source source = Source.of(dataDirectory,
+				ParallelPickupLoader.lastLineEnd(pickupTimesFile, pickupTimesFile.length()));
+		PickupDataset dataset = PickupDataset.parse(dataDirectory, source.pickupTimesEnd);
+		write(dataset, source, snapshotFile);
+		System.out.println("Wrote " + dataset.getStore().size() + " pickups to " + snapshotFile);
+	}
+	
+	/**
+	 * Writes a dataset that was parsed from the given source.
+	 * <p>
+	 * The snapshot is written to a temporary file that then replaces the file, because a running server reads the
+	 * columns of the file it mapped in place.
+	 */
+	static void write(PickupDataset dataset, Source source, File file) throws IOException {
+		PickupStore store = dataset.getStore();
+		Map<Long, Coordinate> locations = dataset.getLocations();
+		PickupHistograms histograms = dataset.getHistograms();
+		byte[] fileKey = source.fileKey.getBytes(StandardCharsets.UTF_8);
+		long histogramsSize = histograms.byteSize();
+		long size = dataOffset(fileKey.length) + (long) locations.size() * COORDINATE_SIZE
+				+ (long) store.getLocationCount() * Long.BYTES + (long) store.size() * (Long.BYTES + 2 * Integer.BYTES)
+				+ histogramsSize;
+		
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Pickup snapshot of " + size + " bytes is too large to map");
+		}
+		
+		File directory = file.getAbsoluteFile().getParentFile();
+		Path temporary = Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				
+				buffer.putInt(MAGIC);
+				buffer.putInt(VERSION);
+				buffer.putInt(locations.size());
+				buffer.putInt(store.getLocationCount());
+				buffer.putInt(store.size());
+				buffer.putInt(fileKey.length);
+				buffer.putLong(source.pickupTimesEnd);
+				buffer.putLong(source.locationsModified);
+				buffer.putLong(source.checksum);
+				buffer.putLong(histogramsSize);
+				buffer.put(fileKey);
+				buffer.position(dataOffset(fileKey.length));
+				
+				for (Map.Entry<Long, Coordinate> entry : locations.entrySet()) {
+					buffer.putLong(entry.getKey());
+					buffer.putDouble(entry.getValue().getLon());
+					buffer.putDouble(entry.getValue().getLat());
+				}
+				for (int location = 0; location < store.getLocationCount(); location++) {
+					buffer.putLong(store.getLocationId(location));
+				}
+				for (int row = 0; row < store.size(); row++) {
+					buffer.putLong(store.getTimestamp(row));
+				}
+				for (int row = 0; row < store.size(); row++) {
+					buffer.putInt(store.getLocation(row));
+				}
+				for (int row = 0; row < store.size(); row++) {
+					buffer.putInt(store.getPickupTime(row));
+				}
+				histograms.write(buffer);
+				buffer.force();
+			}
+			Files.move(temporary, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+	
+	/**
+	 * Maps a snapshot of the CSV files of the data directory and adds the rows of pickup_times.csv after it up to
+	 * the byte position pickupTimesEnd.
+	 *
+	 * @return the dataset, or null if the snapshot is not current, was written by another version or cannot be read,
+	 * in which case the CSV files are parsed instead
+	 */
+	public static PickupDataset read(File file, File dataDirectory, long pickupTimesEnd) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				return unreadable(file, "it is too large to map");
+			}
+			
+			// the mapping stays valid after the channel is closed
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			
+			if (buffer.remaining() < 2 * Integer.BYTES || buffer.getInt() != MAGIC) {
+				return unreadable(file, "it is not a pickup snapshot");
+			}
+			if (buffer.getInt() != VERSION) {
+				return null;
+			}
+			if (buffer.remaining() < HEADER_SIZE - 2 * Integer.BYTES) {
+				return unreadable(file, "it is truncated");
+			}
+			
+			int coordinateCount = buffer.getInt();
+			int locationCount = buffer.getInt();
+			int rowCount = buffer.getInt();
+			int fileKeyLength = buffer.getInt();
+			long snapshotEnd = buffer.getLong();
+			long locationsModified = buffer.getLong();
+			long checksum = buffer.getLong();
+			long histogramsSize = buffer.getLong();
+			
+			long expectedSize = dataOffset(fileKeyLength) + (long) coordinateCount * COORDINATE_SIZE
+					+ (long) locationCount * Long.BYTES + (long) rowCount * (Long.BYTES + 2 * Integer.BYTES)
+					+ histogramsSize;
+			if (coordinateCount < 0 || locationCount < 0 || rowCount < 0 || fileKeyLength < 0 || histogramsSize < 0
+					|| channel.size() != expectedSize) {
+				return unreadable(file, "it is truncated or corrupt");
+			}
+			byte[] fileKey = new byte[fileKeyLength];
+			buffer.get(fileKey);
+			buffer.position(dataOffset(fileKeyLength));
+			
+			// the CSV files must still start with the rows of the snapshot
+			if (snapshotEnd > pickupTimesEnd) {
+				return null;
+			}
+			Source source = new Source(snapshotEnd, locationsModified, checksum,
+					new String(fileKey, StandardCharsets.UTF_8));
+			if (!source.isCurrent(dataDirectory)) {
+				return null;
+			}
+			
+			Map<Long, Coordinate> locations = new HashMap<>();
+			for (int i = 0; i < coordinateCount; i++) {
+				long id = buffer.getLong();
+				double lon = buffer.getDouble();
+				double lat = buffer.getDouble();
+				locations.put(id, new Coordinate(lon, lat));
+			}
+			
+			long[] locationIds = new long[locationCount];
+			for (int location = 0; location < locationCount; location++) {
+				locationIds[location] = buffer.getLong();
+			}
+			
+			PickupStore store = new PickupStore(locationIds,
+					column(buffer, buffer.position() + rowCount * Long.BYTES, rowCount * Integer.BYTES).asIntBuffer(),
+					column(buffer, buffer.position(), rowCount * Long.BYTES).asLongBuffer(),
+					column(buffer, buffer.position() + rowCount * (Long.BYTES + Integer.BYTES), rowCount * Integer.BYTES).asIntBuffer());
+			
+			ByteBuffer histogramsBuffer = column(buffer, buffer.position() + rowCount * (Long.BYTES + 2 * Integer.BYTES),
+					(int) histogramsSize);
+			PickupHistograms histograms;
+			try {
+				histograms = PickupHistograms.read(histogramsBuffer, locationIds);
+			} catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+				return unreadable(file, "its histograms are corrupt");
+			}
+			PickupDataset dataset = histograms == null ? new PickupDataset(store, locations)
+					: new PickupDataset(store, histograms, locations);
+			if (pickupTimesEnd > snapshotEnd) {
+				dataset = dataset.append(new ParallelPickupLoader(ForkJoinPool.commonPool())
+						.parse(new File(dataDirectory, PickupDataset.PICKUP_TIMES_FILE), snapshotEnd, pickupTimesEnd));
+			}
+			return dataset;
+		}
+	}
+	
+	private static PickupDataset unreadable(File file, String reason) {
+		System.err.println("Ignoring pickup snapshot " + file.getName() + " because " + reason);
+		return null;
+	}
+	
+	private static int dataOffset(int fileKeyLength) {
+		return (HEADER_SIZE + fileKeyLength + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+	}
+	
+	private static ByteBuffer column(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer column = buffer.duplicate();
+		column.position(offset);
+		column.limit(offset + length);
+		return column.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * The state of the CSV files of a data directory that a snapshot was written from.
+	 */
+	static class Source {
+		
+		private final long pickupTimesEnd;
+		private final long locationsModified;
+		private final long checksum;
+		// empty if the file system has no file keys
+		private final String fileKey;
+		
+		private Source(long pickupTimesEnd, long locationsModified, long checksum, String fileKey) {
+			this.pickupTimesEnd = pickupTimesEnd;
+			this.locationsModified = locationsModified;
+			this.checksum = checksum;
+			this.fileKey = fileKey;
+		}
+		
+		long getPickupTimesEnd() {
+			return pickupTimesEnd;
+		}
+		
+		/**
+		 * @return whether pickup_times.csv of the data directory is the same file and still starts with the bytes
+		 * read from it, and locations.csv is unchanged
+		 */
+		boolean isCurrent(File dataDirectory) throws IOException {
+			if (new File(dataDirectory, PickupDataset.PICKUP_TIMES_FILE).length() < pickupTimesEnd) {
+				return false;
+			}
+			Source current = of(dataDirectory, pickupTimesEnd);
+			return current.fileKey.equals(fileKey) && current.locationsModified == locationsModified
+					&& current.checksum == checksum;
+		}
+		
+		/**
+		 * Reads the state of the CSV files of a data directory when pickup_times.csv is read up to pickupTimesEnd.
+		 */
+		static Source of(File dataDirectory, long pickupTimesEnd) throws IOException {
+			Path pickupTimesPath = new File(dataDirectory, PickupDataset.PICKUP_TIMES_FILE).toPath();
+			BasicFileAttributes attributes = Files.readAttributes(pickupTimesPath, BasicFileAttributes.class);
+			
+			// checksum the bytes before the end, which differ when the file was rewritten in place
+			CRC32 crc = new CRC32();
+			try (FileChannel channel = FileChannel.open(pickupTimesPath, StandardOpenOption.READ)) {
+				long from = Math.max(0, Math.min(pickupTimesEnd, channel.size()) - CHECKSUM_BYTES);
+				ByteBuffer bytes = ByteBuffer.allocate((int) (Math.min(pickupTimesEnd, channel.size()) - from));
+				int read;
+				do {
+					read = channel.read(bytes, from + bytes.position());
+				} while (read > 0 && bytes.hasRemaining());
+				crc.update(bytes.array(), 0, bytes.position());
+			}
+			
+			Object fileKey = attributes.fileKey();
+			return new Source(pickupTimesEnd, new File(dataDirectory, PickupDataset.LOCATIONS_FILE).lastModified(),
+					crc.getValue(), fileKey == null ? "" : fileKey.toString());
+		}
+	}
+}
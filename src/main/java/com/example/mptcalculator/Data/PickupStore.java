@@ -0,0 +1,356 @@
+package com.example.mptcalculator.Data;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column-oriented, immutable storage of pickups.
+ * <p>
+ * Every pickup is a row spread over primitive columns: the index of its location, its timestamp in UTC epoch seconds
+ * and its pickup time in minutes. Location indexes refer to the sorted table of location ids.
+ * <p>
+ * Rows are sorted by timestamp, so the rows of a time window are a contiguous range found with {@link #lowerBound(long)}.
+ * <p>
+ * The rows are kept in segments: a base, and the rows appended after it in segments that grow geometrically towards
+ * the base. Appending rows adds a segment and only merges it with the last segments when they overlap in time or
+ * are not much larger, so appending a few rows copies a few rows however large the store is, and the base is only
+ * copied when as many rows have been appended.
+ * <p>
+ * The columns are buffers, so they can either wrap arrays or be read in place from a mapped {@link PickupSnapshot}.
+ */
+public class PickupStore {
+	
+	private final long[] locationIds;
+	private final Segment[] segments;
+	// the first row of every segment, followed by the size of the store
+	private final int[] offsets;
+	
+	PickupStore(long[] locationIds, IntBuffer locations, LongBuffer timestamps, IntBuffer pickupTimes) {
+		this(locationIds,
+				new Segment[] {new Segment(locations, timestamps, pickupTimes, identity(locationIds.length))});
+	}
+	
+	private PickupStore(long[] locationIds, Segment[] segments) {
+		this.locationIds = locationIds;
+		this.segments = segments;
+		offsets = new int[segments.length + 1];
+		for (int segment = 0; segment < segments.length; segment++) {
+			offsets[segment + 1] = offsets[segment] + segments[segment].size();
+		}
+	}
+	
+	public int size() {
+		return offsets[segments.length];
+	}
+	
+	public int getLocationCount() {
+		return locationIds.length;
+	}
+	
+	public long getLocationId(int location) {
+		return locationIds[location];
+	}
+	
+	public int getLocation(int row) {
+		int segment = segmentOf(row);
+		return segments[segment].getLocation(row - offsets[segment]);
+	}
+	
+	public long getTimestamp(int row) {
+		int segment = segmentOf(row);
+		return segments[segment].timestamps.get(row - offsets[segment]);
+	}
+	
+	public int getPickupTime(int row) {
+		int segment = segmentOf(row);
+		return segments[segment].pickupTimes.get(row - offsets[segment]);
+	}
+	
+	/**
+	 * @return the index of the location id, or a negative value if the store has no pickups of that location
+	 */
+	public int indexOf(long locationId) {
+		return Arrays.binarySearch(locationIds, locationId);
+	}
+	
+	/**
+	 * @return the first row with a timestamp at or after the given one, or {@link #size()} if there is none
+	 */
+	public int lowerBound(long timestamp) {
+		// the segments are sorted too, so find the first one that ends at or after the timestamp
+		int low = 0;
+		int high = segments.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (segments[middle].getLastTimestamp() < timestamp) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low == segments.length ? size() : offsets[low] + segments[low].lowerBound(timestamp);
+	}
+	
+	/**
+	 * Returns a new store with the rows of this store followed by the given rows. Rows with the same timestamp keep
+	 * this store's rows first, so appending rows in file order gives the same store as building all of them at once.
+	 * The segments of this store are shared with the new store, apart from the last segments that the rows overlap.
+	 */
+	public PickupStore append(PickupStore rows) {
+		// merge the location ids
+		long[] mergedIds = new long[locationIds.length + rows.locationIds.length];
+		int[] mapping = new int[locationIds.length];
+		int[] rowsMapping = new int[rows.locationIds.length];
+		int idCount = 0;
+		for (int i = 0, j = 0; i < locationIds.length || j < rows.locationIds.length; ) {
+			long id;
+			if (j == rows.locationIds.length || (i < locationIds.length && locationIds[i] <= rows.locationIds[j])) {
+				id = locationIds[i];
+			} else {
+				id = rows.locationIds[j];
+			}
+			if (i < locationIds.length && locationIds[i] == id) {
+				mapping[i++] = idCount;
+			}
+			if (j < rows.locationIds.length && rows.locationIds[j] == id) {
+				rowsMapping[j++] = idCount;
+			}
+			mergedIds[idCount++] = id;
+		}
+		
+		// new location ids renumber the locations of the existing segments
+		List<Segment> merged = new ArrayList<>(segments.length + rows.segments.length);
+		for (Segment segment : segments) {
+			merged.add(idCount == locationIds.length ? segment : segment.remap(mapping));
+		}
+		for (Segment segment : rows.segments) {
+			if (segment.size() == 0) {
+				continue;
+			}
+			merged.add(segment.remap(rowsMapping));
+			
+			// merge the last segments while they overlap in time, or while the last one is not much smaller
+			while (merged.size() > 1) {
+				Segment last = merged.get(merged.size() - 1);
+				Segment previous = merged.get(merged.size() - 2);
+				if (last.timestamps.get(0) >= previous.getLastTimestamp() && previous.size() > 2 * last.size()) {
+					break;
+				}
+				merged.remove(merged.size() - 1);
+				merged.set(merged.size() - 1, Segment.merge(previous, last, idCount));
+			}
+		}
+		
+		return new PickupStore(Arrays.copyOf(mergedIds, idCount), merged.toArray(new Segment[0]));
+	}
+	
+	private int segmentOf(int row) {
+		if (row < offsets[1]) {
+			return 0;
+		}
+		
+		// find the last segment that starts at or before the row
+		int low = 1;
+		int high = segments.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (offsets[middle] <= row) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+	
+	private static int[] identity(int size) {
+		int[] identity = new int[size];
+		for (int i = 0; i < size; i++) {
+			identity[i] = i;
+		}
+		return identity;
+	}
+	
+	/**
+	 * Rows sorted by timestamp, whose location column refers to the locations of the store through a mapping, so
+	 * that new locations only change the mapping.
+	 */
+	private static class Segment {
+		
+		private final IntBuffer locations;
+		private final LongBuffer timestamps;
+		private final IntBuffer pickupTimes;
+		private final int[] storeLocations;
+		
+		Segment(IntBuffer locations, LongBuffer timestamps, IntBuffer pickupTimes, int[] storeLocations) {
+			this.locations = locations;
+			this.timestamps = timestamps;
+			this.pickupTimes = pickupTimes;
+			this.storeLocations = storeLocations;
+		}
+		
+		int size() {
+			return timestamps.limit();
+		}
+		
+		int getLocation(int row) {
+			return storeLocations[locations.get(row)];
+		}
+		
+		long getLastTimestamp() {
+			return size() == 0 ? Long.MIN_VALUE : timestamps.get(size() - 1);
+		}
+		
+		int lowerBound(long timestamp) {
+			int low = 0;
+			int high = size();
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (timestamps.get(middle) < timestamp) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+		
+		/**
+		 * @return the segment with its store locations renumbered by the mapping
+		 */
+		Segment remap(int[] mapping) {
+			int[] remapped = new int[storeLocations.length];
+			for (int i = 0; i < remapped.length; i++) {
+				remapped[i] = mapping[storeLocations[i]];
+			}
+			return new Segment(locations, timestamps, pickupTimes, remapped);
+		}
+		
+		/**
+		 * @return the rows of both segments sorted by timestamp, with the rows of the first one first when
+		 * timestamps are equal
+		 */
+		static Segment merge(Segment first, Segment second, int locationCount) {
+			int size = first.size() + second.size();
+			int[] mergedLocations = new int[size];
+			long[] mergedTimestamps = new long[size];
+			int[] mergedPickupTimes = new int[size];
+			for (int row = 0, i = 0, j = 0; row < size; row++) {
+				if (j == second.size() || (i < first.size() && first.timestamps.get(i) <= second.timestamps.get(j))) {
+					mergedLocations[row] = first.getLocation(i);
+					mergedTimestamps[row] = first.timestamps.get(i);
+					mergedPickupTimes[row] = first.pickupTimes.get(i);
+					i++;
+				} else {
+					mergedLocations[row] = second.getLocation(j);
+					mergedTimestamps[row] = second.timestamps.get(j);
+					mergedPickupTimes[row] = second.pickupTimes.get(j);
+					j++;
+				}
+			}
+			return new Segment(IntBuffer.wrap(mergedLocations), LongBuffer.wrap(mergedTimestamps),
+					IntBuffer.wrap(mergedPickupTimes), identity(locationCount));
+		}
+	}
+	
+	/**
+	 * Collects the rows of a {@link PickupStore}. A builder is not thread safe.
+	 */
+	public static class Builder {
+		private long[] locationIds = new long[1024];
+		private long[] timestamps = new long[1024];
+		private int[] pickupTimes = new int[1024];
+		private int size;
+		
+		public void add(long locationId, long timestamp, int pickupTime) {
+			if (pickupTime < 0) {
+				throw new IllegalArgumentException("Negative pickup time " + pickupTime);
+			}
+			
+			ensureCapacity(size + 1);
+			locationIds[size] = locationId;
+			timestamps[size] = timestamp;
+			pickupTimes[size] = pickupTime;
+			size++;
+		}
+		
+		/**
+		 * Appends the rows of another builder after the rows of this one.
+		 */
+		public void addAll(Builder other) {
+			ensureCapacity(size + other.size);
+			System.arraycopy(other.locationIds, 0, locationIds, size, other.size);
+			System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+			System.arraycopy(other.pickupTimes, 0, pickupTimes, size, other.size);
+			size += other.size;
+		}
+		
+		private void ensureCapacity(int capacity) {
+			if (capacity > timestamps.length) {
+				capacity = Math.max(capacity, timestamps.length + (timestamps.length >> 1));
+				locationIds = Arrays.copyOf(locationIds, capacity);
+				timestamps = Arrays.copyOf(timestamps, capacity);
+				pickupTimes = Arrays.copyOf(pickupTimes, capacity);
+			}
+		}
+		
+		public PickupStore build() {
+			// map the location ids to indexes of the sorted distinct ids
+			long[] distinctIds = Arrays.copyOf(locationIds, size);
+			Arrays.sort(distinctIds);
+			int distinctCount = 0;
+			for (int i = 0; i < distinctIds.length; i++) {
+				if (i == 0 || distinctIds[i] != distinctIds[i - 1]) {
+					distinctIds[distinctCount++] = distinctIds[i];
+				}
+			}
+			distinctIds = Arrays.copyOf(distinctIds, distinctCount);
+			
+			// sort the rows by timestamp, keeping the order of the rows with the same timestamp
+			int[] order = sortByTimestamp();
+			
+			int[] sortedLocations = new int[size];
+			long[] sortedTimestamps = new long[size];
+			int[] sortedPickupTimes = new int[size];
+			for (int row = 0; row < size; row++) {
+				int source = order[row];
+				sortedLocations[row] = Arrays.binarySearch(distinctIds, locationIds[source]);
+				sortedTimestamps[row] = timestamps[source];
+				sortedPickupTimes[row] = pickupTimes[source];
+			}
+			
+			return new PickupStore(distinctIds, IntBuffer.wrap(sortedLocations), LongBuffer.wrap(sortedTimestamps),
+					IntBuffer.wrap(sortedPickupTimes));
+		}
+		
+		/**
+		 * Sorts keys that pack the timestamp offset into the high and the row into the low 32 bits,
+		 * which orders the rows without boxing them.
+		 */
+		private int[] sortByTimestamp() {
+			long minTimestamp = Long.MAX_VALUE;
+			for (int row = 0; row < size; row++) {
+				minTimestamp = Math.min(minTimestamp, timestamps[row]);
+			}
+			
+			long[] keys = new long[size];
+			for (int row = 0; row < size; row++) {
+				long offset = timestamps[row] - minTimestamp;
+				if (offset > Integer.MAX_VALUE) {
+					throw new IllegalStateException("Pickup timestamps span more than " + Integer.MAX_VALUE + " seconds");
+				}
+				keys[row] = offset << 32 | row;
+			}
+			Arrays.sort(keys);
+			
+			int[] order = new int[size];
+			for (int row = 0; row < size; row++) {
+				order[row] = (int) keys[row];
+			}
+			return order;
+		}
+	}
+}
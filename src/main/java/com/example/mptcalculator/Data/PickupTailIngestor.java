@@ -0,0 +1,140 @@
+package com.example.mptcalculator.Data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a {@link PickupDataRepository} up to date with the files of a data directory.
+ * <p>
+ * Rows appended to pickup_times.csv are read from the last consumed byte position and added to the current dataset,
+ * without parsing the file again. Only complete lines are consumed, and rows that cannot be parsed are skipped, so
+ * a bad row does not hold back the rows after it. The data is reloaded when pickup_times.csv is truncated,
+ * replaced by another file or rewritten in place, or when locations.csv changes. A rewrite is found by the same
+ * checksum of the bytes before the consumed position as a stale {@link PickupSnapshot}.
+ * <p>
+ * The directory is watched with a {@link WatchService}, and is also polled every {@link #POLL_INTERVAL_MILLIS}
+ * in case the file system does not report changes.
+ */
+public class PickupTailIngestor implements Runnable {
+	
+	public static final long POLL_INTERVAL_MILLIS = 5000;
+	
+	private final File dataDirectory;
+	private final PickupDataRepository repository;
+	private final ParallelPickupLoader loader = new ParallelPickupLoader(ForkJoinPool.commonPool());
+	
+	// the files as they were when the data was last read
+	private PickupSnapshot.Source source;
+	
+	private volatile boolean running;
+	private Thread thread;
+	
+	public PickupTailIngestor(File dataDirectory, PickupDataRepository repository) {
+		this.dataDirectory = dataDirectory;
+		this.repository = repository;
+	}
+	
+	/**
+	 * Loads all data from the data directory into the repository.
+	 */
+	public synchronized void reload() throws IOException {
+		try {
+			File pickupTimesFile = new File(dataDirectory, PickupDataset.PICKUP_TIMES_FILE);
+			long end = ParallelPickupLoader.lastLineEnd(pickupTimesFile, pickupTimesFile.length());
+			PickupSnapshot.Source loaded = PickupSnapshot.Source.of(dataDirectory, end);
+			
+			repository.setDataset(PickupDataset.load(dataDirectory, end));
+			source = loaded;
+		} catch (IOException | RuntimeException e) {
+			repository.setLoadError(e.getLocalizedMessage());
+			throw e;
+		}
+	}
+	
+	/**
+	 * Adds the rows appended to pickup_times.csv since the last call, or reloads the data if the files were replaced.
+	 */
+	public synchronized void poll() throws IOException {
+		File pickupTimesFile = new File(dataDirectory, PickupDataset.PICKUP_TIMES_FILE);
+		if (!pickupTimesFile.isFile()) {
+			return;
+		}
+		
+		if (repository.getDataset() == null || source == null || !source.isCurrent(dataDirectory)) {
+			reload();
+			return;
+		}
+		
+		long end = ParallelPickupLoader.lastLineEnd(pickupTimesFile, pickupTimesFile.length());
+		if (end <= source.getPickupTimesEnd()) {
+			return;
+		}
+		
+		PickupSnapshot.Source next = PickupSnapshot.Source.of(dataDirectory, end);
+		repository.append(loader.parse(pickupTimesFile, source.getPickupTimesEnd(), end));
+		source = next;
+	}
+	
+	public void start() {
+		running = true;
+		thread = new Thread(this, "pickup-tail-ingestor");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	public void stop() {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+	
+	@Override
+	public void run() {
+		WatchService watchService = null;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			dataDirectory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		} catch (IOException | UnsupportedOperationException e) {
+			// fall back to polling
+			e.printStackTrace();
+		}
+		
+		try {
+			while (running) {
+				if (watchService != null) {
+					WatchKey key = watchService.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+					if (key != null) {
+						key.pollEvents();
+						key.reset();
+					}
+				} else {
+					Thread.sleep(POLL_INTERVAL_MILLIS);
+				}
+				
+				try {
+					poll();
+				} catch (IOException | RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (watchService != null) {
+				try {
+					watchService.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.example.mptcalculator.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of query results shared by every UI, evicting the least recently used result when full.
+ * <p>
+ * The results belong to one {@link PickupDataset}. Using the cache with another dataset drops all results,
+ * so a result is never served for data that has changed since it was calculated.
+ */
+public class PickupTimeCache {
+	
+	public static final int DEFAULT_MAX_SIZE = 256;
+	
+	private final Map<PickupTimeQuery, PickupTimeResult> results;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private PickupDataset dataset;
+	
+	public PickupTimeCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+	
+	public PickupTimeCache(int maxSize) {
+		results = new LinkedHashMap<PickupTimeQuery, PickupTimeResult>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 2019011311L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<PickupTimeQuery, PickupTimeResult> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the cached result of the query on the dataset, calculating it on a miss.
+	 */
+	public PickupTimeResult get(PickupDataset dataset, PickupTimeQuery query) {
+		return get(dataset, query, null);
+	}
+	
+	/**
+	 * Returns the cached result of the query on the dataset, calculating approximate results with the given sketch.
+	 * A cache must always be used with the same sketch.
+	 */
+	public PickupTimeResult get(PickupDataset dataset, PickupTimeQuery query, PickupTimeSketch sketch) {
+		synchronized (this) {
+			if (dataset != this.dataset) {
+				results.clear();
+				this.dataset = dataset;
+			}
+			
+			PickupTimeResult result = results.get(query);
+			if (result != null) {
+				hits.incrementAndGet();
+				return result;
+			}
+		}
+		
+		// calculate without holding the lock, so other queries are not blocked
+		misses.incrementAndGet();
+		PickupTimeResult result = dataset.query(query, sketch);
+		synchronized (this) {
+			if (dataset == this.dataset) {
+				results.put(query, result);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the results of several queries on the dataset, in the order of the list. The queries that are not
+	 * cached are calculated together with {@link PickupDataset#query(List, PickupTimeSketch)}.
+	 * <p>
+	 * The calculated results are not cached: a batch may hold more queries than the cache, and would evict every
+	 * result of the UIs for queries that are unlikely to be repeated.
+	 */
+	public List<PickupTimeResult> getAll(PickupDataset dataset, List<PickupTimeQuery> queries, PickupTimeSketch sketch) {
+		List<PickupTimeResult> results = new ArrayList<>(queries.size());
+		List<PickupTimeQuery> missing = new ArrayList<>();
+		synchronized (this) {
+			if (dataset != this.dataset) {
+				this.results.clear();
+				this.dataset = dataset;
+			}
+			
+			for (PickupTimeQuery query : queries) {
+				PickupTimeResult result = this.results.get(query);
+				if (result == null) {
+					missing.add(query);
+				}
+				results.add(result);
+			}
+		}
+		hits.addAndGet(queries.size() - missing.size());
+		if (missing.isEmpty()) {
+			return results;
+		}
+		
+		misses.addAndGet(missing.size());
+		List<PickupTimeResult> calculated = dataset.query(missing, sketch);
+		for (int i = 0, next = 0; i < results.size(); i++) {
+			if (results.get(i) == null) {
+				results.set(i, calculated.get(next++));
+			}
+		}
+		return results;
+	}
+	
+	public synchronized void clear() {
+		results.clear();
+		dataset = null;
+	}
+	
+	public synchronized int size() {
+		return results.size();
+	}
+	
+	public long getHits() {
+		return hits.get();
+	}
+	
+	public long getMisses() {
+		return misses.get();
+	}
+}
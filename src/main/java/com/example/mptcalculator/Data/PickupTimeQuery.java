@@ -0,0 +1,168 @@
+package com.example.mptcalculator.Data;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A time window to calculate pickup times for: from a starting time to an ending time of every day from a date to an
+ * end date, in whole minutes of a time zone, UTC unless set otherwise. An ending time of midnight means the end of the
+ * day. Pickups at the ending time itself belong to the next window. Besides the median, the pickup times at any
+ * percentiles from 0 to 100 can be queried. Approximate queries are answered from {@link PickupTimeSketch} bins.
+ * Queries are values, so equal windows share their cached results.
+ */
+public class PickupTimeQuery {
+	
+	private final LocalDate date;
+	private final LocalDate endDate;
+	private final LocalTime startingTime;
+	private final LocalTime endingTime;
+	private final ZoneId zone;
+	private final boolean approximate;
+	private final int[] percentiles;
+	
+	/**
+	 * Creates an exact query for the median pickup times of a single day.
+	 */
+	public PickupTimeQuery(LocalDate date, int startingHour, int endingHour) {
+		this(new Builder(date, startingHour, endingHour));
+	}
+	
+	private PickupTimeQuery(Builder builder) {
+		this.date = builder.date;
+		this.endDate = builder.endDate;
+		this.startingTime = builder.startingTime;
+		this.endingTime = builder.endingTime;
+		this.zone = builder.zone;
+		this.approximate = builder.approximate;
+		this.percentiles = builder.percentiles;
+	}
+	
+	public LocalDate getDate() {
+		return date;
+	}
+	
+	/**
+	 * @return the last day of the window, which is the date of a single day window
+	 */
+	public LocalDate getEndDate() {
+		return endDate;
+	}
+	
+	public LocalTime getStartingTime() {
+		return startingTime;
+	}
+	
+	public LocalTime getEndingTime() {
+		return endingTime;
+	}
+	
+	/**
+	 * @return the time zone of the dates and times of the window
+	 */
+	public ZoneId getZone() {
+		return zone;
+	}
+	
+	public boolean isApproximate() {
+		return approximate;
+	}
+	
+	public int[] getPercentiles() {
+		return percentiles.clone();
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		PickupTimeQuery that = (PickupTimeQuery) o;
+		return approximate == that.approximate && startingTime.equals(that.startingTime)
+				&& endingTime.equals(that.endingTime) && zone.equals(that.zone) && date.equals(that.date)
+				&& endDate.equals(that.endDate) && Arrays.equals(percentiles, that.percentiles);
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * Objects.hash(date, endDate, startingTime, endingTime, zone, approximate) + Arrays.hashCode(percentiles);
+	}
+	
+	@Override
+	public String toString() {
+		return date + (endDate.equals(date) ? "" : "/" + endDate) + " " + startingTime + "-" + endingTime + " " + zone
+				+ (approximate ? " approximate" : "") + (percentiles.length > 0 ? " p" + Arrays.toString(percentiles) : "");
+	}
+	
+	/**
+	 * Builds queries for date ranges, percentiles or approximate pickup times.
+	 */
+	public static class Builder {
+		private final LocalDate date;
+		private final LocalTime startingTime;
+		private final LocalTime endingTime;
+		private LocalDate endDate;
+		private ZoneId zone = ZoneOffset.UTC;
+		private boolean approximate;
+		private int[] percentiles = new int[0];
+		
+		public Builder(LocalDate date, int startingHour, int endingHour) {
+			this(date, LocalTime.of(startingHour, 0), LocalTime.of(endingHour % 24, 0));
+		}
+		
+		public Builder(LocalDate date, LocalTime startingTime, LocalTime endingTime) {
+			if (startingTime.getSecond() != 0 || startingTime.getNano() != 0
+					|| endingTime.getSecond() != 0 || endingTime.getNano() != 0) {
+				throw new IllegalArgumentException("Times must be whole minutes: " + startingTime + "-" + endingTime);
+			}
+			if (!endingTime.isAfter(startingTime) && !endingTime.equals(LocalTime.MIDNIGHT)) {
+				throw new IllegalArgumentException("Invalid time range " + startingTime + "-" + endingTime);
+			}
+			this.date = Objects.requireNonNull(date);
+			this.endDate = date;
+			this.startingTime = startingTime;
+			this.endingTime = endingTime;
+		}
+		
+		/**
+		 * Repeats the window on every day up to the end date, inclusive.
+		 */
+		public Builder setEndDate(LocalDate endDate) {
+			if (endDate.isBefore(date)) {
+				throw new IllegalArgumentException("End date " + endDate + " is before " + date);
+			}
+			this.endDate = endDate;
+			return this;
+		}
+		
+		public Builder setZone(ZoneId zone) {
+			this.zone = Objects.requireNonNull(zone);
+			return this;
+		}
+		
+		public Builder setApproximate(boolean approximate) {
+			this.approximate = approximate;
+			return this;
+		}
+		
+		public Builder setPercentiles(int... percentiles) {
+			for (int percentile : percentiles) {
+				if (percentile < 0 || percentile > 100) {
+					throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+				}
+			}
+			this.percentiles = percentiles.clone();
+			return this;
+		}
+		
+		public PickupTimeQuery build() {
+			return new PickupTimeQuery(this);
+		}
+	}
+}
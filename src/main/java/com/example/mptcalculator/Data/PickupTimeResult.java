@@ -0,0 +1,73 @@
+package com.example.mptcalculator.Data;
+
+/**
+ * Median pickup times of the locations that had pickups in a queried time window, sorted by location id,
+ * with the pickup times at the queried percentiles.
+ * <p>
+ * Approximate medians and percentiles are interpolated between estimated pickup times that are each off by at most
+ * {@link #getRelativeError()}, and then rounded up to a whole minute. They are therefore off by less than that
+ * fraction of the exact value plus one minute: an exact median of 6 minutes from pickups of 0 and 11 minutes may
+ * be estimated as 5.
+ */
+public class PickupTimeResult {
+	
+	private final long[] locationIds;
+	private final int[] medians;
+	private final int[] percentiles;
+	private final int[][] percentileTimes;
+	private final double relativeError;
+	
+	public PickupTimeResult(long[] locationIds, int[] medians) {
+		this(locationIds, medians, new int[0], new int[0][], 0);
+	}
+	
+	/**
+	 * @param percentileTimes the pickup times of every location at each of the percentiles
+	 */
+	public PickupTimeResult(long[] locationIds, int[] medians, int[] percentiles, int[][] percentileTimes,
+			double relativeError) {
+		this.locationIds = locationIds;
+		this.medians = medians;
+		this.percentiles = percentiles;
+		this.percentileTimes = percentileTimes;
+		this.relativeError = relativeError;
+	}
+	
+	public int size() {
+		return locationIds.length;
+	}
+	
+	public long getLocationId(int index) {
+		return locationIds[index];
+	}
+	
+	public int getMedian(int index) {
+		return medians[index];
+	}
+	
+	public int getPercentileCount() {
+		return percentiles.length;
+	}
+	
+	/**
+	 * @return the percentile, from 0 to 100, of the given percentile column
+	 */
+	public int getPercentile(int column) {
+		return percentiles[column];
+	}
+	
+	public int getPercentileTime(int column, int index) {
+		return percentileTimes[column][index];
+	}
+	
+	/**
+	 * @return the maximum relative error of the pickup time at each rank, 0 if the medians are exact
+	 */
+	public double getRelativeError() {
+		return relativeError;
+	}
+	
+	public boolean isApproximate() {
+		return relativeError > 0;
+	}
+}
@@ -0,0 +1,106 @@
+package com.example.mptcalculator.Data;
+
+/**
+ * Logarithmic binning of pickup times with a bounded relative error, in the manner of DDSketch.
+ * <p>
+ * Bin 0 counts pickups of 0 minutes, and bin {@code i > 0} counts the pickups in (gamma^(i-2), gamma^(i-1)] minutes,
+ * where gamma = (1 + a) / (1 - a) for the relative accuracy a. Every pickup time of a bin is estimated by the same
+ * whole minute, which is off by at most {@link #getRelativeError()} of the pickup time: about a, plus the rounding of
+ * short pickups. Pickups longer than {@link #MAX_PICKUP_TIME} are counted in the last bin,
+ * {@link #getOverflowBin()}, which has no estimate: queries select the ranks that fall into it from the pickups.
+ * <p>
+ * Histograms over these bins are quantile sketches: their size only depends on a, and they are merged by adding
+ * their counts.
+ */
+public class PickupTimeSketch {
+	
+	public static final double DEFAULT_RELATIVE_ACCURACY = 0.05;
+	public static final int MAX_PICKUP_TIME = 24 * 60;
+	
+	private final double relativeAccuracy;
+	private final double logGamma;
+	private final int[] values;
+	private final double relativeError;
+	
+	public PickupTimeSketch(double relativeAccuracy) {
+		if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+			throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: " + relativeAccuracy);
+		}
+		
+		this.relativeAccuracy = relativeAccuracy;
+		this.logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+		
+		// find the shortest and longest pickup time of every bin below the overflow bin
+		int binCount = logarithmicBin(MAX_PICKUP_TIME) + 2;
+		int[] shortest = new int[binCount];
+		int[] longest = new int[binCount];
+		for (int pickupTime = MAX_PICKUP_TIME; pickupTime > 0; pickupTime--) {
+			int bin = logarithmicBin(pickupTime);
+			if (longest[bin] == 0) {
+				longest[bin] = pickupTime;
+			}
+			shortest[bin] = pickupTime;
+		}
+		
+		// estimate each bin by the whole minute with the smallest relative error to both ends
+		values = new int[binCount];
+		values[binCount - 1] = -1;
+		double maxError = 0;
+		for (int bin = 1; bin < binCount - 1; bin++) {
+			if (longest[bin] == 0) {
+				continue;
+			}
+			double middle = 2.0 * shortest[bin] * longest[bin] / (shortest[bin] + longest[bin]);
+			int lower = (int) Math.floor(middle);
+			int upper = (int) Math.ceil(middle);
+			values[bin] = error(lower, shortest[bin], longest[bin]) <= error(upper, shortest[bin], longest[bin])
+					? lower : upper;
+			maxError = Math.max(maxError, error(values[bin], shortest[bin], longest[bin]));
+		}
+		this.relativeError = maxError;
+	}
+	
+	public double getRelativeAccuracy() {
+		return relativeAccuracy;
+	}
+	
+	/**
+	 * @return the maximum relative error of the estimated pickup times up to {@link #MAX_PICKUP_TIME}
+	 */
+	public double getRelativeError() {
+		return relativeError;
+	}
+	
+	public int getBinCount() {
+		return values.length;
+	}
+	
+	/**
+	 * @return the last bin, which counts the pickups longer than {@link #MAX_PICKUP_TIME}
+	 */
+	public int getOverflowBin() {
+		return values.length - 1;
+	}
+	
+	public int bin(int pickupTime) {
+		if (pickupTime > MAX_PICKUP_TIME) {
+			return getOverflowBin();
+		}
+		return pickupTime == 0 ? 0 : logarithmicBin(pickupTime);
+	}
+	
+	/**
+	 * @return the estimated pickup time of a bin, or -1 for the {@link #getOverflowBin() overflow bin}
+	 */
+	public int value(int bin) {
+		return values[bin];
+	}
+	
+	private int logarithmicBin(int pickupTime) {
+		return 1 + (int) Math.ceil(Math.log(pickupTime) / logGamma);
+	}
+	
+	private static double error(int value, int shortest, int longest) {
+		return Math.max((double) (value - shortest) / shortest, (double) (longest - value) / longest);
+	}
+}
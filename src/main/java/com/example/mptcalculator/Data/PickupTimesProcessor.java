@@ -0,0 +1,50 @@
+package com.example.mptcalculator.Data;
+
+import com.univocity.parsers.common.ParsingContext;
+import com.univocity.parsers.common.processor.AbstractRowProcessor;
+
+/**
+ * Row processor for pickup_times.csv that adds every row to a {@link PickupStore} while the file is being read,
+ * so the file is parsed in a single pass without keeping the parsed records.
+ * <p>
+ * The parser must select the fields in the order of {@link #FIELDS}. Rows that cannot be parsed are skipped and
+ * counted, so one bad row does not stop the rows after it from being read.
+ */
+public class PickupTimesProcessor extends AbstractRowProcessor {
+	
+	public static final String[] FIELDS = {"location_id", "iso_8601_timestamp", "pickup_time"};
+	
+	private final PickupStore.Builder builder;
+	private int invalidRowCount;
+	private String firstInvalidRow;
+	
+	public PickupTimesProcessor(PickupStore.Builder builder) {
+		this.builder = builder;
+	}
+	
+	@Override
+	public void rowProcessed(String[] row, ParsingContext context) {
+		try {
+			long id = Long.parseLong(row[0]);
+			long timestamp = TimestampParser.parseEpochSecond(row[1]);
+			int time = Integer.parseInt(row[2]);
+			
+			builder.add(id, timestamp, time);
+		} catch (IllegalArgumentException e) {
+			if (invalidRowCount++ == 0) {
+				firstInvalidRow = e.getMessage();
+			}
+		}
+	}
+	
+	public int getInvalidRowCount() {
+		return invalidRowCount;
+	}
+	
+	/**
+	 * @return the error of the first skipped row, or null if no row was skipped
+	 */
+	public String getFirstInvalidRow() {
+		return firstInvalidRow;
+	}
+}
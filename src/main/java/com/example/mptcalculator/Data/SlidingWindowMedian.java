@@ -0,0 +1,246 @@
+package com.example.mptcalculator.Data;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Median pickup time of every location over the last minutes of pickups, updated as pickups arrive and expire.
+ * <p>
+ * The window ends at the current time of its clock, and moves forward whenever pickups are added or medians are
+ * read, so a paused feed empties the window instead of showing old pickups. Pickups that are already older than the
+ * window are ignored. Pickups timestamped after the current time, by at most the length of the window, wait until
+ * their time comes, and later ones are ignored.
+ * <p>
+ * Every location counts its pickups in the bins of {@link PickupHistograms} with a Fenwick tree, so adding,
+ * expiring and ranking a pickup takes O(log bins). Pickups longer than {@link PickupHistograms#MAX_PICKUP_TIME}
+ * are kept sorted by themselves. The methods are synchronized, so pickups can be added while medians are read.
+ */
+public class SlidingWindowMedian {
+	
+	public static final long DEFAULT_WINDOW_SECONDS = 30 * 60;
+	
+	private final long windowSeconds;
+	private final Clock clock;
+	private final PriorityQueue<Pickup> pickups = new PriorityQueue<>();
+	// pickups after the end of the window
+	private final PriorityQueue<Pickup> pending = new PriorityQueue<>();
+	private final Map<Long, LocationWindow> locations = new TreeMap<>();
+	private long windowEnd = Long.MIN_VALUE;
+	
+	public SlidingWindowMedian(long windowSeconds) {
+		this(windowSeconds, Clock.systemUTC());
+	}
+	
+	public SlidingWindowMedian(long windowSeconds, Clock clock) {
+		this.windowSeconds = windowSeconds;
+		this.clock = clock;
+	}
+	
+	public long getWindowSeconds() {
+		return windowSeconds;
+	}
+	
+	/**
+	 * @return the epoch second that ended the window when it last moved forward
+	 */
+	public synchronized long getWindowEnd() {
+		return windowEnd;
+	}
+	
+	public synchronized void add(long locationId, long timestamp, int pickupTime) {
+		advance();
+		if (timestamp <= windowEnd - windowSeconds || timestamp > windowEnd + windowSeconds) {
+			return;
+		}
+		
+		Pickup pickup = new Pickup(locationId, timestamp, pickupTime);
+		if (timestamp > windowEnd) {
+			pending.add(pickup);
+		} else {
+			enter(pickup);
+		}
+	}
+	
+	/**
+	 * Adds the pickups of a store that fall into the window.
+	 */
+	public synchronized void addAll(PickupStore store) {
+		if (store.size() == 0) {
+			return;
+		}
+		
+		advance();
+		for (int row = store.lowerBound(windowEnd - windowSeconds + 1); row < store.size(); row++) {
+			add(store.getLocationId(store.getLocation(row)), store.getTimestamp(row), store.getPickupTime(row));
+		}
+	}
+	
+	/**
+	 * Removes all pickups and starts over with the latest pickups of the store.
+	 */
+	public synchronized void reset(PickupStore store) {
+		pickups.clear();
+		pending.clear();
+		locations.clear();
+		addAll(store);
+	}
+	
+	/**
+	 * @return the median pickup times of the locations with pickups in the window
+	 */
+	public synchronized PickupTimeResult medianPickupTimes() {
+		advance();
+		long[] locationIds = new long[locations.size()];
+		int[] medians = new int[locations.size()];
+		int index = 0;
+		for (Map.Entry<Long, LocationWindow> entry : locations.entrySet()) {
+			locationIds[index] = entry.getKey();
+			medians[index] = entry.getValue().median();
+			index++;
+		}
+		return new PickupTimeResult(locationIds, medians);
+	}
+	
+	/**
+	 * Calculates the median pickup time of every group of locations in the window, pooling the pickups of a group
+	 * as if it was one location.
+	 *
+	 * @return the median of every group in the order of the groups, or -1 for a group without pickups in the window
+	 */
+	public synchronized int[] pooledMedianPickupTimes(List<long[]> groups) {
+		advance();
+		int[] medians = new int[groups.size()];
+		for (int group = 0; group < medians.length; group++) {
+			LocationWindow pooled = new LocationWindow();
+			for (long id : groups.get(group)) {
+				LocationWindow location = locations.get(id);
+				if (location != null) {
+					pooled.addAll(location);
+				}
+			}
+			medians[group] = pooled.size == 0 ? -1 : pooled.median();
+		}
+		return medians;
+	}
+	
+	/**
+	 * Moves the window to end at the current time: the pending pickups up to it enter the window, and the pickups
+	 * at or before its start expire.
+	 */
+	private void advance() {
+		windowEnd = Math.max(windowEnd, clock.instant().getEpochSecond());
+		while (!pending.isEmpty() && pending.peek().timestamp <= windowEnd) {
+			enter(pending.poll());
+		}
+		
+		long windowStart = windowEnd - windowSeconds;
+		while (!pickups.isEmpty() && pickups.peek().timestamp <= windowStart) {
+			Pickup pickup = pickups.poll();
+			LocationWindow location = locations.get(pickup.locationId);
+			location.remove(pickup.pickupTime);
+			if (location.size == 0) {
+				locations.remove(pickup.locationId);
+			}
+		}
+	}
+	
+	private void enter(Pickup pickup) {
+		pickups.add(pickup);
+		locations.computeIfAbsent(pickup.locationId, id -> new LocationWindow()).add(pickup.pickupTime);
+	}
+	
+	private static class Pickup implements Comparable<Pickup> {
+		
+		private final long locationId;
+		private final long timestamp;
+		private final int pickupTime;
+		
+		Pickup(long locationId, long timestamp, int pickupTime) {
+			this.locationId = locationId;
+			this.timestamp = timestamp;
+			this.pickupTime = pickupTime;
+		}
+		
+		@Override
+		public int compareTo(Pickup other) {
+			return Long.compare(timestamp, other.timestamp);
+		}
+	}
+	
+	/**
+	 * The pickup times of one location in the window.
+	 */
+	private static class LocationWindow {
+		
+		// one based Fenwick tree over the bins
+		private final int[] tree = new int[PickupHistograms.BINS + 1];
+		private final TreeMap<Integer, Integer> overflow = new TreeMap<>();
+		private int size;
+		
+		void add(int pickupTime) {
+			update(Math.min(pickupTime, PickupHistograms.OVERFLOW_BIN), 1);
+			if (pickupTime > PickupHistograms.MAX_PICKUP_TIME) {
+				overflow.merge(pickupTime, 1, Integer::sum);
+			}
+			size++;
+		}
+		
+		/**
+		 * Adds the pickups of another window. Fenwick trees are sums of counts, so they are added bin by bin.
+		 */
+		void addAll(LocationWindow other) {
+			for (int i = 0; i < tree.length; i++) {
+				tree[i] += other.tree[i];
+			}
+			other.overflow.forEach((time, count) -> overflow.merge(time, count, Integer::sum));
+			size += other.size;
+		}
+		
+		void remove(int pickupTime) {
+			update(Math.min(pickupTime, PickupHistograms.OVERFLOW_BIN), -1);
+			if (pickupTime > PickupHistograms.MAX_PICKUP_TIME) {
+				overflow.compute(pickupTime, (time, count) -> count == 1 ? null : count - 1);
+			}
+			size--;
+		}
+		
+		int median() {
+			int lower = valueAtRank(Medians.lowerRank(50, size));
+			int upper = valueAtRank(Medians.upperRank(50, size));
+			return Medians.percentile(50, size, lower, upper);
+		}
+		
+		private void update(int bin, int delta) {
+			for (int i = bin + 1; i < tree.length; i += i & -i) {
+				tree[i] += delta;
+			}
+		}
+		
+		private int valueAtRank(int rank) {
+			// descend the tree to the last bin that counts at most rank pickups before it
+			int bin = 0;
+			int remaining = rank;
+			for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+				if (bin + step < tree.length && tree[bin + step] <= remaining) {
+					bin += step;
+					remaining -= tree[bin];
+				}
+			}
+			if (bin < PickupHistograms.OVERFLOW_BIN) {
+				return bin;
+			}
+			
+			// the rank falls into the overflow bin, so count through the long pickups
+			for (Map.Entry<Integer, Integer> entry : overflow.entrySet()) {
+				remaining -= entry.getValue();
+				if (remaining < 0) {
+					return entry.getKey();
+				}
+			}
+			throw new IllegalStateException("Rank " + rank + " out of " + size + " pickups");
+		}
+	}
+}
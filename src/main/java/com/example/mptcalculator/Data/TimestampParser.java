@@ -0,0 +1,85 @@
+package com.example.mptcalculator.Data;
+
+/**
+ * Parser for the fixed yyyy-MM-ddTHH:mm:ssZ timestamps of pickup_times.csv.
+ * <p>
+ * The characters are converted straight to UTC epoch seconds, without allocating any date objects.
+ */
+public class TimestampParser {
+	
+	private static final int LENGTH = "yyyy-MM-ddTHH:mm:ssZ".length();
+	
+	private TimestampParser() {
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if the value is not a valid yyyy-MM-ddTHH:mm:ssZ timestamp
+	 */
+	public static long parseEpochSecond(CharSequence value) {
+		if (value == null || value.length() != LENGTH || value.charAt(4) != '-' || value.charAt(7) != '-'
+				|| value.charAt(10) != 'T' || value.charAt(13) != ':' || value.charAt(16) != ':' || value.charAt(19) != 'Z') {
+			throw invalid(value);
+		}
+		
+		int year = digits(value, 0, 4);
+		int month = digits(value, 5, 2);
+		int day = digits(value, 8, 2);
+		int hour = digits(value, 11, 2);
+		int minute = digits(value, 14, 2);
+		int second = digits(value, 17, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+				|| hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+			throw invalid(value);
+		}
+		
+		return daysFromEpoch(year, month, day) * 86400 + hour * 3600 + minute * 60 + second;
+	}
+	
+	/**
+	 * @return the value of the decimal digits, or -1 if one of the characters is not a digit
+	 */
+	private static int digits(CharSequence value, int start, int length) {
+		int result = 0;
+		for (int i = start; i < start + length; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			result = result * 10 + (c - '0');
+		}
+		return result;
+	}
+	
+	private static int lengthOfMonth(int year, int month) {
+		switch (month) {
+			case 2:
+				boolean leapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+				return leapYear ? 29 : 28;
+			case 4:
+			case 6:
+			case 9:
+			case 11:
+				return 30;
+			default:
+				return 31;
+		}
+	}
+	
+	/**
+	 * Counts the days from 1970-01-01 to a date of the proleptic Gregorian calendar.
+	 */
+	private static long daysFromEpoch(int year, int month, int day) {
+		// shift the year to start in March, so the leap day is the last day of the year
+		int shiftedYear = month <= 2 ? year - 1 : year;
+		// the shifted year of January and February of year 0 is -1, which belongs to the era before
+		int era = Math.floorDiv(shiftedYear, 400);
+		int yearOfEra = shiftedYear - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+	
+	private static IllegalArgumentException invalid(CharSequence value) {
+		return new IllegalArgumentException("Invalid timestamp " + value);
+	}
+}
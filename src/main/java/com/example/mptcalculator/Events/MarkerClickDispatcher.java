@@ -0,0 +1,71 @@
+package com.example.mptcalculator.Events;
+
+import com.vaadin.server.SerializableConsumer;
+import com.vaadin.server.SerializableFunction;
+import com.vaadin.tapio.googlemaps.GoogleMap;
+import com.vaadin.tapio.googlemaps.client.events.MarkerClickListener;
+import com.vaadin.tapio.googlemaps.client.overlays.GoogleMapInfoWindow;
+import com.vaadin.tapio.googlemaps.client.overlays.GoogleMapMarker;
+import com.vaadin.ui.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The one marker click listener of a map, which opens the info window of the clicked marker looked up by its id.
+ * <p>
+ * An info window and its contents are only built when its marker is clicked for the first time, so markers that
+ * are never clicked cost nothing on the server or in the response. Markers with negative ids stand for clusters
+ * of locations, and clicking them is passed to the cluster listener instead.
+ */
+public class MarkerClickDispatcher implements MarkerClickListener {
+	
+	private static final long serialVersionUID = 2019012101L;
+	
+	private final GoogleMap map;
+	private final String width;
+	private final String height;
+	private final SerializableFunction<GoogleMapMarker, Component> contentsFactory;
+	private final SerializableConsumer<GoogleMapMarker> clusterListener;
+	private final Map<Long, GoogleMapInfoWindow> windows = new HashMap<>();
+	
+	public MarkerClickDispatcher(GoogleMap map, String width, String height,
+			SerializableFunction<GoogleMapMarker, Component> contentsFactory,
+			SerializableConsumer<GoogleMapMarker> clusterListener) {
+		this.map = map;
+		this.width = width;
+		this.height = height;
+		this.contentsFactory = contentsFactory;
+		this.clusterListener = clusterListener;
+	}
+	
+	/**
+	 * Closes and forgets the info window of a marker that is removed from the map.
+	 */
+	public void removeMarker(long markerId) {
+		GoogleMapInfoWindow window = windows.remove(markerId);
+		if (window != null) {
+			map.closeInfoWindow(window);
+		}
+	}
+	
+	@Override
+	public void markerClicked(GoogleMapMarker clickedMarker) {
+		if (clickedMarker.getId() < 0) {
+			clusterListener.accept(clickedMarker);
+			return;
+		}
+		
+		GoogleMapInfoWindow window = windows.get(clickedMarker.getId());
+		if (window == null) {
+			window = new GoogleMapInfoWindow("Restaurant" + Long.toString(clickedMarker.getId()), clickedMarker);
+			window.setWidth(width);
+			window.setHeight(height);
+			map.setInfoWindowContents(window, contentsFactory.apply(clickedMarker));
+			windows.put(clickedMarker.getId(), window);
+		} else if (map.isInfoWindowOpen(window)) {
+			return;
+		}
+		map.openInfoWindow(window);
+	}
+}
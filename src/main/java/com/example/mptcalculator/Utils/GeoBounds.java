@@ -0,0 +1,81 @@
+package com.example.mptcalculator.Utils;
+
+/**
+ * A rectangle of latitudes and longitudes, such as the visible part of the map. The rectangle crosses the
+ * antimeridian when west is greater than east.
+ */
+public class GeoBounds {
+	
+	private final double south;
+	private final double west;
+	private final double north;
+	private final double east;
+	
+	public GeoBounds(double south, double west, double north, double east) {
+		this.south = south;
+		this.west = west;
+		this.north = north;
+		this.east = east;
+	}
+	
+	public double getSouth() {
+		return south;
+	}
+	
+	public double getWest() {
+		return west;
+	}
+	
+	public double getNorth() {
+		return north;
+	}
+	
+	public double getEast() {
+		return east;
+	}
+	
+	/**
+	 * @return the width in degrees of longitude
+	 */
+	public double getWidth() {
+		return west <= east ? east - west : east - west + 360;
+	}
+	
+	/**
+	 * @return the bounds grown by the given fraction of their width and height on every side
+	 */
+	public GeoBounds expand(double fraction) {
+		double latMargin = (north - south) * fraction;
+		double lonMargin = getWidth() * fraction;
+		if (getWidth() + 2 * lonMargin >= 360) {
+			return new GeoBounds(Math.max(south - latMargin, -90), -180, Math.min(north + latMargin, 90), 180);
+		}
+		return new GeoBounds(Math.max(south - latMargin, -90), wrap(west - lonMargin),
+				Math.min(north + latMargin, 90), wrap(east + lonMargin));
+	}
+	
+	public boolean contains(Coordinate coordinate) {
+		return contains(coordinate.getLat(), coordinate.getLon());
+	}
+	
+	public boolean contains(GeoBounds other) {
+		if (other.south < south || other.north > north) {
+			return false;
+		}
+		// measure the other longitudes eastwards from the west edge
+		double otherWest = other.west < west ? other.west + 360 : other.west;
+		return getWidth() >= 360 || otherWest + other.getWidth() <= west + getWidth();
+	}
+	
+	private boolean contains(double lat, double lon) {
+		return lat >= south && lat <= north && containsLon(lon);
+	}
+	
+	private boolean containsLon(double lon) {
+		return west <= east ? lon >= west && lon <= east : lon >= west || lon <= east;
+	}
+	
+	private static double wrap(double lon) {
+		return lon < -180 ? lon + 360 : lon > 180 ? lon - 360 : lon;
+	}
+}
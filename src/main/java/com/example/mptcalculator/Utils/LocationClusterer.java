@@ -0,0 +1,155 @@
+package com.example.mptcalculator.Utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups locations that are close to each other on the map at a zoom level.
+ * <p>
+ * The world is projected to pixels as by Google Maps (Web Mercator, 256 pixels wide at zoom 0) and cut into square
+ * cells of {@link #CELL_PIXELS}, and the locations of a cell form a cluster. Every zoom level halves the cells,
+ * so clusters split up as the map is zoomed in.
+ */
+public class LocationClusterer {
+	
+	public static final int CELL_PIXELS = 64;
+	
+	private static final int TILE_PIXELS = 256;
+	// the latitudes of the top and bottom edges of the projected world
+	private static final double MAX_LAT = 85.05112878;
+	
+	private LocationClusterer() {
+	}
+	
+	/**
+	 * @return the clusters of the given locations in the order of their first location, leaving out ids without
+	 * a coordinate
+	 */
+	public static List<Cluster> cluster(long[] ids, Map<Long, Coordinate> coordinates, int zoom) {
+		Map<Long, List<Long>> cells = new LinkedHashMap<>();
+		for (long id : ids) {
+			Coordinate coordinate = coordinates.get(id);
+			if (coordinate != null) {
+				cells.computeIfAbsent(cell(coordinate, zoom), cell -> new ArrayList<>()).add(id);
+			}
+		}
+		
+		List<Cluster> clusters = new ArrayList<>(cells.size());
+		for (Map.Entry<Long, List<Long>> entry : cells.entrySet()) {
+			long[] members = new long[entry.getValue().size()];
+			double lon = 0;
+			double lat = 0;
+			for (int i = 0; i < members.length; i++) {
+				members[i] = entry.getValue().get(i);
+				lon += coordinates.get(members[i]).getLon();
+				lat += coordinates.get(members[i]).getLat();
+			}
+			clusters.add(new Cluster(-1 - ((long) zoom << 56 | entry.getKey()), members,
+					new Coordinate(lon / members.length, lat / members.length)));
+		}
+		return clusters;
+	}
+	
+	/**
+	 * @return a cluster of its own for every location, leaving out ids without a coordinate
+	 */
+	public static List<Cluster> separate(long[] ids, Map<Long, Coordinate> coordinates) {
+		List<Cluster> clusters = new ArrayList<>(ids.length);
+		for (long id : ids) {
+			Coordinate coordinate = coordinates.get(id);
+			if (coordinate != null) {
+				clusters.add(new Cluster(id, new long[] {id}, coordinate));
+			}
+		}
+		return clusters;
+	}
+	
+	/**
+	 * @return the bounds grown to the edges of the cells at the zoom level that they intersect, so that the locations
+	 * within them form whole clusters
+	 */
+	public static GeoBounds cellBounds(GeoBounds bounds, int zoom) {
+		double north = bounds.getNorth() >= MAX_LAT ? 90
+				: latitude(Math.floor(pixelY(bounds.getNorth(), zoom) / CELL_PIXELS) * CELL_PIXELS, zoom);
+		double south = bounds.getSouth() <= -MAX_LAT ? -90
+				: latitude(Math.ceil(pixelY(bounds.getSouth(), zoom) / CELL_PIXELS) * CELL_PIXELS, zoom);
+		double westX = Math.floor(pixelX(bounds.getWest(), zoom) / CELL_PIXELS) * CELL_PIXELS;
+		double eastX = Math.ceil(pixelX(bounds.getEast(), zoom) / CELL_PIXELS) * CELL_PIXELS;
+		if (bounds.getWidth() >= 360 || (bounds.getWest() > bounds.getEast() && westX <= eastX)) {
+			return new GeoBounds(south, -180, north, 180);
+		}
+		return new GeoBounds(south, longitude(westX, zoom), north, longitude(eastX, zoom));
+	}
+	
+	/**
+	 * @return the x pixel of the longitude at the zoom level
+	 */
+	public static double pixelX(double lon, int zoom) {
+		return (lon + 180) / 360 * worldPixels(zoom);
+	}
+	
+	/**
+	 * @return the y pixel of the latitude at the zoom level, counted from the north
+	 */
+	public static double pixelY(double lat, int zoom) {
+		double sin = Math.sin(Math.toRadians(lat));
+		return (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * worldPixels(zoom);
+	}
+	
+	private static double longitude(double pixelX, int zoom) {
+		return Math.min(pixelX / worldPixels(zoom) * 360 - 180, 180);
+	}
+	
+	private static double latitude(double pixelY, int zoom) {
+		return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * pixelY / worldPixels(zoom)))));
+	}
+	
+	private static double worldPixels(int zoom) {
+		return TILE_PIXELS * Math.pow(2, zoom);
+	}
+	
+	private static long cell(Coordinate coordinate, int zoom) {
+		long x = (long) Math.floor(pixelX(coordinate.getLon(), zoom) / CELL_PIXELS);
+		long y = (long) Math.floor(pixelY(coordinate.getLat(), zoom) / CELL_PIXELS);
+		// cells fit into 28 bits per axis up to zoom 22
+		return x << 28 | (y & ((1 << 28) - 1));
+	}
+	
+	/**
+	 * Locations in the same cell. A cluster of more than one location has a negative id, which is unique per cell
+	 * and zoom level and never collides with a location id.
+	 */
+	public static class Cluster {
+		
+		private final long id;
+		private final long[] locationIds;
+		private final Coordinate center;
+		
+		Cluster(long id, long[] locationIds, Coordinate center) {
+			this.id = locationIds.length == 1 ? locationIds[0] : id;
+			this.locationIds = locationIds;
+			this.center = center;
+		}
+		
+		public long getId() {
+			return id;
+		}
+		
+		public long[] getLocationIds() {
+			return locationIds;
+		}
+		
+		public int size() {
+			return locationIds.length;
+		}
+		
+		/**
+		 * @return the mean coordinate of the locations
+		 */
+		public Coordinate getCenter() {
+			return center;
+		}
+	}
+}
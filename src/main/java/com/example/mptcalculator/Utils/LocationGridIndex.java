@@ -0,0 +1,77 @@
+package com.example.mptcalculator.Utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the locations inside {@link GeoBounds} by putting them into a grid of {@link #CELL_DEGREES} cells,
+ * so a query only looks at the cells it overlaps instead of every location.
+ */
+public class LocationGridIndex {
+	
+	public static final double CELL_DEGREES = 0.1;
+	
+	private final Map<Long, Coordinate> coordinates;
+	private final Map<Long, List<Long>> cells = new HashMap<>();
+	
+	public LocationGridIndex(Map<Long, Coordinate> coordinates) {
+		this.coordinates = coordinates;
+		for (Map.Entry<Long, Coordinate> entry : coordinates.entrySet()) {
+			long cell = cell(cellX(entry.getValue().getLon()), cellY(entry.getValue().getLat()));
+			cells.computeIfAbsent(cell, key -> new ArrayList<>()).add(entry.getKey());
+		}
+	}
+	
+	/**
+	 * @return the ids of the locations inside the bounds
+	 */
+	public List<Long> within(GeoBounds bounds) {
+		List<Long> ids = new ArrayList<>();
+		int fromY = cellY(bounds.getSouth());
+		int toY = cellY(bounds.getNorth());
+		int fromX = cellX(bounds.getWest());
+		int toX = cellX(bounds.getEast());
+		long cellCount = (long) (toY - fromY + 1) * (fromX <= toX ? toX - fromX + 1
+				: cellX(180) - fromX + 1 + toX - cellX(-180) + 1);
+		
+		// a large area has more cells than there are occupied ones, so look at the occupied cells instead
+		if (cellCount > cells.size()) {
+			for (List<Long> cell : cells.values()) {
+				addWithin(cell, bounds, ids);
+			}
+			return ids;
+		}
+		
+		for (int y = fromY; y <= toY; y++) {
+			for (int x = fromX; x != toX + 1; x = x == cellX(180) ? cellX(-180) : x + 1) {
+				List<Long> cell = cells.get(cell(x, y));
+				if (cell != null) {
+					addWithin(cell, bounds, ids);
+				}
+			}
+		}
+		return ids;
+	}
+	
+	private void addWithin(List<Long> cell, GeoBounds bounds, List<Long> ids) {
+		for (long id : cell) {
+			if (bounds.contains(coordinates.get(id))) {
+				ids.add(id);
+			}
+		}
+	}
+	
+	private static int cellX(double lon) {
+		return (int) Math.floor(lon / CELL_DEGREES);
+	}
+	
+	private static int cellY(double lat) {
+		return (int) Math.floor(lat / CELL_DEGREES);
+	}
+	
+	private static long cell(int x, int y) {
+		return (long) x << 32 | (y & 0xffffffffL);
+	}
+}
@@ -0,0 +1,79 @@
+package com.example.mptcalculator.Data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class MediansTest {
+	
+	@Test
+	public void selectsLikeSorting() {
+		Random random = new Random(1);
+		for (int round = 0; round < 500; round++) {
+			int size = 1 + random.nextInt(round < 250 ? 40 : 2000);
+			// few distinct values like pickup times, and many
+			int bound = round % 2 == 0 ? 1 + random.nextInt(10) : Integer.MAX_VALUE;
+			int[] values = new int[size];
+			for (int i = 0; i < size; i++) {
+				values[i] = random.nextInt(bound);
+			}
+			assertSelectsLikeSorting(values, random.nextInt(size));
+		}
+	}
+	
+	@Test
+	public void selectsFromOrderedValues() {
+		int size = 5000;
+		int[] ascending = new int[size];
+		int[] descending = new int[size];
+		int[] organPipe = new int[size];
+		for (int i = 0; i < size; i++) {
+			ascending[i] = i;
+			descending[i] = size - i;
+			organPipe[i] = Math.min(i, size - i);
+		}
+		for (int[] values : new int[][] {ascending, descending, organPipe, new int[size]}) {
+			for (int rank : new int[] {0, 1, size / 2, size - 2, size - 1}) {
+				assertSelectsLikeSorting(values, rank);
+			}
+		}
+	}
+	
+	@Test
+	public void selectsWithinTheRange() {
+		int[] values = {9, 8, 7, 6, 5, 4, 3, 2, 1, 0};
+		assertEquals(4, Medians.select(values, 2, 8, 2));
+		assertEquals(9, values[0]);
+		assertEquals(8, values[1]);
+		assertEquals(1, values[8]);
+		assertEquals(0, values[9]);
+	}
+	
+	@Test
+	public void interpolatesPercentiles() {
+		// 1, 2, 3, 4: the median is the mean of 2 and 3, rounded up
+		assertEquals(1, Medians.lowerRank(50, 4));
+		assertEquals(2, Medians.upperRank(50, 4));
+		assertEquals(3, Medians.percentile(50, 4, 2, 3));
+		assertEquals(2, Medians.percentile(50, 5, 2, 2));
+		// the 90th percentile of 1..4 lies at 2.7
+		assertEquals(2, Medians.lowerRank(90, 4));
+		assertEquals(3, Medians.upperRank(90, 4));
+		assertEquals(4, Medians.percentile(90, 4, 3, 4));
+		assertEquals(0, Medians.lowerRank(0, 4));
+		assertEquals(3, Medians.upperRank(100, 4));
+	}
+	
+	private static void assertSelectsLikeSorting(int[] values, int rank) {
+		int[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int[] selected = values.clone();
+		assertEquals(sorted[rank], Medians.select(selected, 0, selected.length, rank));
+		// only reordered
+		Arrays.sort(selected);
+		assertEquals(Arrays.toString(sorted), Arrays.toString(selected));
+	}
+}
@@ -0,0 +1,78 @@
+package com.example.mptcalculator.Data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelPickupLoaderTest {
+	
+	private static final int ROWS = 20000;
+	
+	@Test
+	public void parallelParseMatchesSequentialParse() throws IOException {
+		File file = writePickupTimes(new Random(1));
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			PickupStore sequential = new ParallelPickupLoader(pool, Integer.MAX_VALUE).load(file);
+			assertEquals(ROWS, sequential.size());
+			// chunks of a few hundred bytes split the file into as many ranges as the pool allows
+			for (int minChunkSize : new int[] {1, 100, 4096}) {
+				assertSame(sequential, new ParallelPickupLoader(pool, minChunkSize).load(file));
+			}
+		} finally {
+			pool.shutdown();
+			assertTrue(file.delete());
+		}
+	}
+	
+	@Test
+	public void parsesRangesAfterLineBreaks() throws IOException {
+		File file = writePickupTimes(new Random(2));
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			ParallelPickupLoader loader = new ParallelPickupLoader(pool, 100);
+			long middle = ParallelPickupLoader.lastLineEnd(file, file.length() / 2);
+			PickupStore.Builder rows = loader.parse(file, 0, middle);
+			rows.addAll(loader.parse(file, middle, file.length()));
+			assertSame(new ParallelPickupLoader(pool, Integer.MAX_VALUE).load(file), rows.build());
+		} finally {
+			pool.shutdown();
+			assertTrue(file.delete());
+		}
+	}
+	
+	private static File writePickupTimes(Random random) throws IOException {
+		File file = File.createTempFile("pickup_times", ".csv");
+		long start = Instant.parse("2019-01-07T00:00:00Z").getEpochSecond();
+		try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+			writer.print("location_id,iso_8601_timestamp,pickup_time\n");
+			for (int row = 0; row < ROWS; row++) {
+				long timestamp = start + random.nextInt(14 * 86400);
+				writer.print((1 + random.nextInt(100)) + "," + Instant.ofEpochSecond(timestamp) + ","
+						+ random.nextInt(200) + "\n");
+			}
+		}
+		return file;
+	}
+	
+	private static void assertSame(PickupStore expected, PickupStore actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int row = 0; row < expected.size(); row++) {
+			assertArrayEquals("Row " + row,
+					new long[] {expected.getLocationId(expected.getLocation(row)), expected.getTimestamp(row),
+							expected.getPickupTime(row)},
+					new long[] {actual.getLocationId(actual.getLocation(row)), actual.getTimestamp(row),
+							actual.getPickupTime(row)});
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package com.example.mptcalculator.Data;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the medians and percentiles of queries with the ones of the sorted pickup times of the same rows.
+ */
+public class PickupDatasetTest {
+	
+	private static final LocalDate FIRST_DATE = LocalDate.of(2019, 1, 1);
+	private static final int DAYS = 320;
+	private static final int[] PERCENTILES = {0, 10, 25, 75, 90, 99, 100};
+	
+	@Test
+	public void hourlyQueriesMatchSortedPickupTimes() {
+		Random random = new Random(1);
+		List<long[]> rows = randomRows(random, 50000);
+		PickupDataset dataset = dataset(rows);
+		for (int i = 0; i < 200; i++) {
+			LocalDate date = FIRST_DATE.plusDays(random.nextInt(DAYS + 10) - 5);
+			int startingHour = random.nextInt(24);
+			int endingHour = random.nextInt(4) == 0 ? 0 : startingHour + 1 + random.nextInt(24 - startingHour);
+			assertQuery(rows, dataset, new PickupTimeQuery.Builder(date, startingHour, endingHour)
+					.setEndDate(date.plusDays(random.nextInt(random.nextBoolean() ? 3 : 120)))
+					.setPercentiles(PERCENTILES).build());
+		}
+	}
+	
+	@Test
+	public void zonedQueriesMatchSortedPickupTimes() {
+		Random random = new Random(2);
+		List<long[]> rows = randomRows(random, 30000);
+		PickupDataset dataset = dataset(rows);
+		String[] zones = {"UTC", "Europe/Helsinki", "Asia/Kolkata", "America/New_York", "Australia/Lord_Howe",
+				"Pacific/Chatham"};
+		for (int i = 0; i < 200; i++) {
+			int from = random.nextInt(96) * 15;
+			int to = from + 15 * (1 + random.nextInt(96 - from / 15));
+			LocalDate date = FIRST_DATE.plusDays(random.nextInt(DAYS));
+			ZoneId zone = ZoneId.of(zones[random.nextInt(zones.length)]);
+			assertQuery(rows, dataset, new PickupTimeQuery.Builder(date, LocalTime.of(from / 60, from % 60),
+					to == 24 * 60 ? LocalTime.MIDNIGHT : LocalTime.of(to / 60, to % 60))
+					.setEndDate(date.plusDays(random.nextInt(40))).setZone(zone).setPercentiles(PERCENTILES).build());
+		}
+	}
+	
+	@Test
+	public void windowsOnClockChangesHoldTheirLocalTimes() {
+		List<long[]> rows = randomRows(new Random(4), 50000);
+		PickupDataset dataset = dataset(rows);
+		// the clocks skip 03:00-04:00 on 2019-03-31 and repeat it on 2019-10-27
+		int[][] windows = {{0, 0, 0, 0}, {2, 30, 3, 30}, {3, 15, 3, 45}, {3, 15, 4, 30}, {3, 45, 15, 0}, {4, 0, 5, 0}};
+		for (LocalDate date : new LocalDate[] {LocalDate.of(2019, 3, 31), LocalDate.of(2019, 10, 27)}) {
+			for (int[] window : windows) {
+				LocalTime startingTime = LocalTime.of(window[0], window[1]);
+				LocalTime endingTime = LocalTime.of(window[2], window[3]);
+				assertQuery(rows, dataset, new PickupTimeQuery.Builder(date, startingTime, endingTime)
+						.setZone(ZoneId.of("Europe/Helsinki")).setPercentiles(PERCENTILES).build());
+				assertQuery(rows, dataset, new PickupTimeQuery.Builder(date.minusDays(3), startingTime, endingTime)
+						.setEndDate(date.plusDays(3)).setZone(ZoneId.of("Europe/Helsinki")).build());
+			}
+		}
+	}
+	
+	@Test
+	public void appendedRowsAreQueried() {
+		Random random = new Random(3);
+		List<long[]> rows = randomRows(random, 20000);
+		PickupDataset dataset = dataset(rows.subList(0, 10000));
+		for (int start = 10000; start < rows.size(); start += 2500) {
+			PickupStore.Builder pickups = new PickupStore.Builder();
+			for (long[] row : rows.subList(start, start + 2500)) {
+				pickups.add(row[0], row[1], (int) row[2]);
+			}
+			dataset = dataset.append(pickups);
+		}
+		
+		for (int i = 0; i < 100; i++) {
+			LocalDate date = FIRST_DATE.plusDays(random.nextInt(DAYS));
+			int startingHour = random.nextInt(24);
+			assertQuery(rows, dataset, new PickupTimeQuery.Builder(date, startingHour, 0)
+					.setEndDate(date.plusDays(random.nextInt(60))).setPercentiles(PERCENTILES).build());
+		}
+	}
+	
+	/**
+	 * @return rows of location id, timestamp and pickup time, some of them longer than the histograms count
+	 */
+	private static List<long[]> randomRows(Random random, int count) {
+		long start = FIRST_DATE.toEpochDay() * 86400;
+		List<long[]> rows = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int pickupTime = random.nextInt(50) == 0 ? PickupHistograms.MAX_PICKUP_TIME + random.nextInt(500)
+					: random.nextInt(60);
+			rows.add(new long[] {1 + random.nextInt(20), start + (long) (random.nextDouble() * DAYS * 86400),
+					pickupTime});
+		}
+		return rows;
+	}
+	
+	private static PickupDataset dataset(List<long[]> rows) {
+		PickupStore.Builder builder = new PickupStore.Builder();
+		for (long[] row : rows) {
+			builder.add(row[0], row[1], (int) row[2]);
+		}
+		return new PickupDataset(builder.build(), new HashMap<>());
+	}
+	
+	private static void assertQuery(List<long[]> rows, PickupDataset dataset, PickupTimeQuery query) {
+		Map<Long, List<Integer>> pickupTimes = new TreeMap<>();
+		LocalTime endingTime = query.getEndingTime();
+		for (long[] row : rows) {
+			ZonedDateTime time = Instant.ofEpochSecond(row[1]).atZone(query.getZone());
+			LocalDate date = time.toLocalDate();
+			LocalTime timeOfDay = time.toLocalTime();
+			if (!date.isBefore(query.getDate()) && !date.isAfter(query.getEndDate())
+					&& !timeOfDay.isBefore(query.getStartingTime())
+					&& (endingTime.equals(LocalTime.MIDNIGHT) || timeOfDay.isBefore(endingTime))) {
+				pickupTimes.computeIfAbsent(row[0], id -> new ArrayList<>()).add((int) row[2]);
+			}
+		}
+		
+		PickupTimeResult result = dataset.query(query);
+		assertEquals(query.toString(), pickupTimes.size(), result.size());
+		int index = 0;
+		for (Map.Entry<Long, List<Integer>> entry : pickupTimes.entrySet()) {
+			List<Integer> sorted = entry.getValue();
+			Collections.sort(sorted);
+			assertEquals(query.toString(), entry.getKey(), (Long) result.getLocationId(index));
+			assertEquals(query + " median", percentile(sorted, 50), result.getMedian(index));
+			for (int column = 0; column < result.getPercentileCount(); column++) {
+				int percentile = result.getPercentile(column);
+				assertEquals(query + " p" + percentile, percentile(sorted, percentile),
+						result.getPercentileTime(column, index));
+			}
+			index++;
+		}
+	}
+	
+	/**
+	 * @return the percentile interpolated between the closest ranks and rounded up to whole minutes
+	 */
+	private static int percentile(List<Integer> sorted, int percentile) {
+		long position = (long) percentile * (sorted.size() - 1);
+		int lower = sorted.get((int) (position / 100));
+		int upper = sorted.get((int) ((position + 99) / 100));
+		return lower + (int) ((position % 100 * (upper - lower) + 99) / 100);
+	}
+}
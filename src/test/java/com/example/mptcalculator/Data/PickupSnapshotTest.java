@@ -0,0 +1,158 @@
+package com.example.mptcalculator.Data;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PickupSnapshotTest {
+	
+	private static final LocalDate FIRST_DATE = LocalDate.of(2019, 1, 1);
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File dataDirectory;
+	private File pickupTimesFile;
+	private File snapshotFile;
+	private Random random = new Random(1);
+	
+	@Before
+	public void writeData() throws IOException {
+		dataDirectory = folder.getRoot();
+		Files.write(folder.newFile(PickupDataset.LOCATIONS_FILE).toPath(),
+				"location_id,longitude,latitude\n1,24.94,60.17\n2,24.93,60.16\n3,24.92,60.15\n"
+						.getBytes(StandardCharsets.UTF_8));
+		pickupTimesFile = folder.newFile(PickupDataset.PICKUP_TIMES_FILE);
+		Files.write(pickupTimesFile.toPath(), "location_id,iso_8601_timestamp,pickup_time\n"
+				.getBytes(StandardCharsets.UTF_8));
+		appendRows(5000);
+		snapshotFile = new File(dataDirectory, PickupDataset.SNAPSHOT_FILE);
+	}
+	
+	@Test
+	public void readsTheDatasetItWasWrittenFrom() throws IOException {
+		writeSnapshot();
+		PickupDataset snapshot = PickupSnapshot.read(snapshotFile, dataDirectory, pickupTimesFile.length());
+		assertSame(PickupDataset.parse(dataDirectory, pickupTimesFile.length()), snapshot);
+	}
+	
+	@Test
+	public void parsesRowsAppendedAfterTheSnapshot() throws IOException {
+		writeSnapshot();
+		appendRows(1000);
+		PickupDataset snapshot = PickupSnapshot.read(snapshotFile, dataDirectory, pickupTimesFile.length());
+		assertEquals(6000, snapshot.getStore().size());
+		assertSame(PickupDataset.parse(dataDirectory, pickupTimesFile.length()), snapshot);
+	}
+	
+	@Test
+	public void ignoresSnapshotOfRewrittenFile() throws IOException {
+		writeSnapshot();
+		Files.write(pickupTimesFile.toPath(), Files.readAllLines(pickupTimesFile.toPath()).subList(0, 4000),
+				StandardCharsets.UTF_8);
+		appendRows(2000);
+		assertEquals(null, PickupSnapshot.read(snapshotFile, dataDirectory, pickupTimesFile.length()));
+	}
+	
+	@Test
+	public void parsesTheFilesInsteadOfTruncatedSnapshot() throws IOException {
+		writeSnapshot();
+		try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+			file.setLength(file.length() - 7);
+		}
+		assertEquals(null, PickupSnapshot.read(snapshotFile, dataDirectory, pickupTimesFile.length()));
+		assertSame(PickupDataset.parse(dataDirectory, pickupTimesFile.length()),
+				PickupDataset.load(dataDirectory, pickupTimesFile.length()));
+	}
+	
+	@Test
+	public void parsesTheFilesInsteadOfCorruptSnapshot() throws IOException {
+		writeSnapshot();
+		try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+			// the number of rows
+			file.seek(4 * Integer.BYTES);
+			file.writeInt(-1);
+		}
+		assertEquals(null, PickupSnapshot.read(snapshotFile, dataDirectory, pickupTimesFile.length()));
+		assertSame(PickupDataset.parse(dataDirectory, pickupTimesFile.length()),
+				PickupDataset.load(dataDirectory, pickupTimesFile.length()));
+	}
+	
+	@Test
+	public void rewritingKeepsTheMappedSnapshot() throws IOException {
+		writeSnapshot();
+		long end = pickupTimesFile.length();
+		PickupDataset mapped = PickupSnapshot.read(snapshotFile, dataDirectory, end);
+		
+		// the columns of the new snapshot are at other offsets
+		appendRows(3000);
+		writeSnapshot();
+		assertSame(PickupDataset.parse(dataDirectory, end), mapped);
+		PickupDataset rewritten = PickupSnapshot.read(snapshotFile, dataDirectory, pickupTimesFile.length());
+		assertEquals(8000, rewritten.getStore().size());
+		// no temporary file is left behind
+		assertEquals(3, dataDirectory.listFiles().length);
+	}
+	
+	private void writeSnapshot() throws IOException {
+		PickupSnapshot.main(new String[] {dataDirectory.getPath()});
+		assertTrue(snapshotFile.isFile());
+	}
+	
+	private void appendRows(int count) throws IOException {
+		StringBuilder rows = new StringBuilder();
+		long start = FIRST_DATE.toEpochDay() * 86400;
+		for (int i = 0; i < count; i++) {
+			rows.append(1 + random.nextInt(3)).append(',')
+					.append(Instant.ofEpochSecond(start + random.nextInt(90 * 86400))).append(',')
+					.append(random.nextInt(200)).append('\n');
+		}
+		Files.write(pickupTimesFile.toPath(), rows.toString().getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+	}
+	
+	private static void assertSame(PickupDataset expected, PickupDataset actual) {
+		PickupStore expectedStore = expected.getStore();
+		PickupStore actualStore = actual.getStore();
+		assertEquals(expectedStore.size(), actualStore.size());
+		assertEquals(expected.getLocations().keySet(), actual.getLocations().keySet());
+		for (int row = 0; row < expectedStore.size(); row++) {
+			assertEquals(expectedStore.getTimestamp(row), actualStore.getTimestamp(row));
+			assertEquals(expectedStore.getLocationId(expectedStore.getLocation(row)),
+					actualStore.getLocationId(actualStore.getLocation(row)));
+			assertEquals(expectedStore.getPickupTime(row), actualStore.getPickupTime(row));
+		}
+		
+		// the histograms of the snapshot answer queries like counted ones
+		for (int day = 0; day < 90; day += 7) {
+			LocalDate date = FIRST_DATE.plusDays(day);
+			PickupTimeQuery query = new PickupTimeQuery.Builder(date, day % 24, 0).setEndDate(date.plusDays(day))
+					.setPercentiles(10, 90).build();
+			PickupTimeResult expectedResult = expected.query(query);
+			PickupTimeResult actualResult = actual.query(query);
+			assertEquals(expectedResult.size(), actualResult.size());
+			for (int i = 0; i < expectedResult.size(); i++) {
+				assertEquals(expectedResult.getLocationId(i), actualResult.getLocationId(i));
+				assertArrayEquals(new int[] {expectedResult.getMedian(i), expectedResult.getPercentileTime(0, i),
+								expectedResult.getPercentileTime(1, i)},
+						new int[] {actualResult.getMedian(i), actualResult.getPercentileTime(0, i),
+								actualResult.getPercentileTime(1, i)});
+			}
+		}
+	}
+}
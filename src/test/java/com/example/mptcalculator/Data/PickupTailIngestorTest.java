@@ -0,0 +1,94 @@
+package com.example.mptcalculator.Data;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+
+public class PickupTailIngestorTest {
+	
+	private static final String HEADER = "location_id,iso_8601_timestamp,pickup_time\n";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File pickupTimesFile;
+	private PickupDataRepository repository;
+	private PickupTailIngestor ingestor;
+	
+	@Before
+	public void writeData() throws IOException {
+		write(folder.newFile(PickupDataset.LOCATIONS_FILE),
+				"location_id,longitude,latitude\n1,24.94,60.17\n7,24.93,60.16\n8,24.92,60.15\n");
+		pickupTimesFile = folder.newFile(PickupDataset.PICKUP_TIMES_FILE);
+		write(pickupTimesFile, HEADER + "1,2019-02-01T10:00:00Z,10\n1,2019-02-01T10:30:00Z,20\n");
+		repository = new PickupDataRepository();
+		ingestor = new PickupTailIngestor(folder.getRoot(), repository);
+		ingestor.reload();
+	}
+	
+	@Test
+	public void appendsNewRows() throws IOException {
+		append("8,2019-02-01T11:00:00Z,5\n7,2019-02-01T11:10");
+		ingestor.poll();
+		assertEquals(3, repository.getDataset().getStore().size());
+		
+		// the incomplete line is read once it ends
+		append(":00Z,6\n");
+		ingestor.poll();
+		assertEquals(4, repository.getDataset().getStore().size());
+	}
+	
+	@Test
+	public void skipsInvalidRows() throws IOException {
+		append("7,garbage,1\n8,2019-02-01T11:00:00Z,5\n");
+		ingestor.poll();
+		PickupStore store = repository.getDataset().getStore();
+		assertEquals(3, store.size());
+		assertEquals(8, store.getLocationId(store.getLocation(2)));
+		
+		append("7,2019-02-01T11:10:00Z,6\n");
+		ingestor.poll();
+		assertEquals(4, repository.getDataset().getStore().size());
+		
+		// a restart parses the whole file past the invalid row
+		PickupDataRepository restarted = new PickupDataRepository();
+		new PickupTailIngestor(folder.getRoot(), restarted).reload();
+		assertEquals(4, restarted.getDataset().getStore().size());
+	}
+	
+	@Test
+	public void reloadsFileRewrittenInPlace() throws IOException {
+		// the same file with other rows, longer than the rows read before
+		write(pickupTimesFile,
+				HEADER + "8,2019-03-01T10:00:00Z,30\n8,2019-03-01T10:10:00Z,31\n8,2019-03-01T10:20:00Z,32\n");
+		ingestor.poll();
+		PickupStore store = repository.getDataset().getStore();
+		assertEquals(3, store.size());
+		assertEquals(1, store.getLocationCount());
+		assertEquals(8, store.getLocationId(0));
+	}
+	
+	@Test
+	public void reloadsTruncatedFile() throws IOException {
+		write(pickupTimesFile, HEADER + "7,2019-03-01T10:00:00Z,30\n");
+		ingestor.poll();
+		assertEquals(1, repository.getDataset().getStore().size());
+	}
+	
+	private void append(String rows) throws IOException {
+		Files.write(pickupTimesFile.toPath(), rows.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+	}
+	
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
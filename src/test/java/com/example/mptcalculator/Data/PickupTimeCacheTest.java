@@ -0,0 +1,95 @@
+package com.example.mptcalculator.Data;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class PickupTimeCacheTest {
+	
+	private static final LocalDate DATE = LocalDate.of(2019, 1, 7);
+	
+	private final PickupDataset dataset = dataset(10);
+	
+	@Test
+	public void servesRepeatedQueriesFromTheCache() {
+		PickupTimeCache cache = new PickupTimeCache();
+		PickupTimeResult result = cache.get(dataset, query(10));
+		assertSame(result, cache.get(dataset, query(10)));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void dropsTheResultsOfAnotherDataset() {
+		PickupTimeCache cache = new PickupTimeCache();
+		PickupTimeResult result = cache.get(dataset, query(10));
+		PickupDataset changed = dataset(20);
+		PickupTimeResult changedResult = cache.get(changed, query(10));
+		assertNotSame(result, changedResult);
+		assertEquals(30, changedResult.getMedian(0));
+		assertEquals(1, cache.size());
+		assertEquals(0, cache.getHits());
+	}
+	
+	@Test
+	public void evictsTheLeastRecentlyUsedResult() {
+		PickupTimeCache cache = new PickupTimeCache(2);
+		PickupTimeResult first = cache.get(dataset, query(10));
+		PickupTimeResult second = cache.get(dataset, query(11));
+		// the first result is used again, so the second one is evicted
+		cache.get(dataset, query(10));
+		cache.get(dataset, query(12));
+		assertEquals(2, cache.size());
+		assertSame(first, cache.get(dataset, query(10)));
+		assertNotSame(second, cache.get(dataset, query(11)));
+	}
+	
+	@Test
+	public void answersBatchesInOrder() {
+		PickupTimeCache cache = new PickupTimeCache();
+		PickupTimeResult cached = cache.get(dataset, query(11));
+		List<PickupTimeResult> results = cache.getAll(dataset, Arrays.asList(query(10), query(11), query(12)), null);
+		assertEquals(3, results.size());
+		assertSame(cached, results.get(1));
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(20 + i, results.get(i).getMedian(0));
+		}
+		assertEquals(1, cache.getHits());
+		assertEquals(3, cache.getMisses());
+	}
+	
+	@Test
+	public void batchesDoNotEvictCachedResults() {
+		PickupTimeCache cache = new PickupTimeCache(2);
+		PickupTimeResult first = cache.get(dataset, query(10));
+		PickupTimeResult second = cache.get(dataset, query(11));
+		cache.getAll(dataset, Arrays.asList(query(0), query(1), query(2), query(3)), null);
+		assertEquals(2, cache.size());
+		assertSame(first, cache.get(dataset, query(10)));
+		assertSame(second, cache.get(dataset, query(11)));
+	}
+	
+	private static PickupTimeQuery query(int hour) {
+		return new PickupTimeQuery.Builder(DATE, hour, hour + 1).build();
+	}
+	
+	/**
+	 * One pickup an hour, taking the base time plus the hour.
+	 */
+	private static PickupDataset dataset(int basePickupTime) {
+		PickupStore.Builder builder = new PickupStore.Builder();
+		long start = DATE.toEpochDay() * 86400;
+		for (int hour = 0; hour < 24; hour++) {
+			builder.add(1, start + hour * 3600 + 60, basePickupTime + hour);
+		}
+		return new PickupDataset(builder.build(), new HashMap<>());
+	}
+}
@@ -0,0 +1,70 @@
+package com.example.mptcalculator.Data;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PickupTimeSketchTest {
+	
+	private static final double[] ACCURACIES = {0.01, 0.05, 0.2};
+	private static final int[] PERCENTILES = {0, 10, 25, 75, 90, 99, 100};
+	
+	@Test
+	public void estimatesWithinTheRelativeError() {
+		for (double accuracy : ACCURACIES) {
+			PickupTimeSketch sketch = new PickupTimeSketch(accuracy);
+			assertEquals(0, sketch.value(sketch.bin(0)));
+			for (int pickupTime = 1; pickupTime <= PickupTimeSketch.MAX_PICKUP_TIME; pickupTime++) {
+				int bin = sketch.bin(pickupTime);
+				assertTrue(bin < sketch.getOverflowBin());
+				assertTrue(pickupTime + " at " + accuracy,
+						Math.abs(sketch.value(bin) - pickupTime) <= sketch.getRelativeError() * pickupTime + 1e-9);
+			}
+			assertEquals(sketch.getOverflowBin(), sketch.bin(PickupTimeSketch.MAX_PICKUP_TIME + 1));
+		}
+	}
+	
+	@Test
+	public void approximateQueriesStayWithinTheBound() {
+		Random random = new Random(1);
+		LocalDate date = LocalDate.of(2019, 1, 7);
+		for (double accuracy : ACCURACIES) {
+			PickupTimeSketch sketch = new PickupTimeSketch(accuracy);
+			for (int round = 0; round < 100; round++) {
+				// short, long and longer than the sketch counts in bins of their own
+				int maxPickupTime = new int[] {20, 200, 3000}[round % 3];
+				PickupStore.Builder builder = new PickupStore.Builder();
+				long start = date.toEpochDay() * 86400;
+				int rows = 1 + random.nextInt(300);
+				for (int i = 0; i < rows; i++) {
+					int pickupTime = random.nextInt(maxPickupTime + 1);
+					builder.add(1 + random.nextInt(3), start + random.nextInt(86400), pickupTime);
+				}
+				PickupDataset dataset = new PickupDataset(builder.build(), new HashMap<>());
+				
+				PickupTimeQuery.Builder query = new PickupTimeQuery.Builder(date, 0, 0).setPercentiles(PERCENTILES);
+				PickupTimeResult exact = dataset.query(query.build(), sketch);
+				PickupTimeResult approximate = dataset.query(query.setApproximate(true).build(), sketch);
+				double error = approximate.getRelativeError();
+				assertEquals(exact.size(), approximate.size());
+				for (int i = 0; i < exact.size(); i++) {
+					assertWithin(error, exact.getMedian(i), approximate.getMedian(i));
+					for (int column = 0; column < PERCENTILES.length; column++) {
+						assertWithin(error, exact.getPercentileTime(column, i),
+								approximate.getPercentileTime(column, i));
+					}
+				}
+			}
+		}
+	}
+	
+	private static void assertWithin(double error, int exact, int approximate) {
+		assertTrue(approximate + " is not within " + error + " of " + exact,
+				Math.abs(approximate - exact) < error * exact + 1);
+	}
+}
@@ -0,0 +1,151 @@
+package com.example.mptcalculator.Data;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SlidingWindowMedianTest {
+	
+	private static final long START = Instant.parse("2019-02-01T10:00:00Z").getEpochSecond();
+	private static final long WINDOW_SECONDS = 600;
+	
+	private final SettableClock clock = new SettableClock(START);
+	private final SlidingWindowMedian window = new SlidingWindowMedian(WINDOW_SECONDS, clock);
+	
+	@Test
+	public void expiresPickupsAsTheClockMoves() {
+		window.add(1, START - 500, 10);
+		window.add(1, START - 100, 20);
+		window.add(2, START - 300, 5);
+		assertMedians(new long[] {1, 2}, new int[] {15, 5});
+		
+		// no pickups arrive, but the window still moves past the older ones
+		clock.setTime(START + 350);
+		assertMedians(new long[] {1}, new int[] {20});
+		clock.setTime(START + 500);
+		assertMedians(new long[] {}, new int[] {});
+		assertEquals(START + 500, window.getWindowEnd());
+	}
+	
+	@Test
+	public void ignoresPickupsOutsideTheWindow() {
+		window.add(1, START - WINDOW_SECONDS, 10);
+		window.add(1, START + WINDOW_SECONDS + 1, 20);
+		assertMedians(new long[] {}, new int[] {});
+	}
+	
+	@Test
+	public void waitsForFuturePickups() {
+		window.add(1, START - 10, 10);
+		window.add(1, START + 100, 30);
+		assertMedians(new long[] {1}, new int[] {10});
+		clock.setTime(START + 100);
+		assertMedians(new long[] {1}, new int[] {20});
+	}
+	
+	@Test
+	public void keepsLongPickupsExact() {
+		int longPickup = PickupHistograms.MAX_PICKUP_TIME + 77;
+		window.add(1, START - 3, longPickup);
+		window.add(1, START - 2, longPickup + 10);
+		window.add(1, START - 1, 5);
+		assertMedians(new long[] {1}, new int[] {longPickup});
+	}
+	
+	@Test
+	public void matchesTheMediansOfTheWindow() {
+		Random random = new Random(1);
+		List<long[]> pickups = new ArrayList<>();
+		long[] allLocations = {1, 2, 3, 4};
+		for (int step = 0; step < 2000; step++) {
+			long timestamp = clock.time - WINDOW_SECONDS + 1 + random.nextInt((int) (2 * WINDOW_SECONDS));
+			long locationId = 1 + random.nextInt(4);
+			int pickupTime = random.nextInt(random.nextInt(10) == 0 ? 300 : 60);
+			window.add(locationId, timestamp, pickupTime);
+			pickups.add(new long[] {locationId, timestamp, pickupTime});
+			clock.setTime(clock.time + random.nextInt(5));
+			
+			if (step % 50 == 0) {
+				PickupTimeResult result = window.medianPickupTimes();
+				for (int i = 0; i < result.size(); i++) {
+					long[] location = {result.getLocationId(i)};
+					assertEquals(expectedMedian(pickups, location), result.getMedian(i));
+				}
+				int[] pooled = window.pooledMedianPickupTimes(Arrays.asList(allLocations, new long[] {1, 3}));
+				assertEquals(expectedMedian(pickups, allLocations), pooled[0]);
+				assertEquals(expectedMedian(pickups, new long[] {1, 3}), pooled[1]);
+			}
+		}
+	}
+	
+	private void assertMedians(long[] locationIds, int[] medians) {
+		PickupTimeResult result = window.medianPickupTimes();
+		long[] actualIds = new long[result.size()];
+		int[] actualMedians = new int[result.size()];
+		for (int i = 0; i < result.size(); i++) {
+			actualIds[i] = result.getLocationId(i);
+			actualMedians[i] = result.getMedian(i);
+		}
+		assertArrayEquals(locationIds, actualIds);
+		assertArrayEquals(medians, actualMedians);
+	}
+	
+	/**
+	 * Sorts the pickups of the locations in the current window.
+	 */
+	private long expectedMedian(List<long[]> pickups, long[] locationIds) {
+		long windowEnd = window.getWindowEnd();
+		List<Integer> times = new ArrayList<>();
+		for (long[] pickup : pickups) {
+			boolean inWindow = pickup[1] > windowEnd - WINDOW_SECONDS && pickup[1] <= windowEnd;
+			if (inWindow && Arrays.stream(locationIds).anyMatch(id -> id == pickup[0])) {
+				times.add((int) pickup[2]);
+			}
+		}
+		if (times.isEmpty()) {
+			return -1;
+		}
+		times.sort(null);
+		int size = times.size();
+		return Medians.percentile(50, size, times.get(Medians.lowerRank(50, size)),
+				times.get(Medians.upperRank(50, size)));
+	}
+	
+	private static class SettableClock extends Clock {
+		
+		private long time;
+		
+		SettableClock(long time) {
+			this.time = time;
+		}
+		
+		void setTime(long time) {
+			this.time = time;
+		}
+		
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+		
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+		
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochSecond(time);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package com.example.mptcalculator.Data;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TimestampParserTest {
+	
+	@Test
+	public void parsesLikeInstant() {
+		Random random = new Random(1);
+		long min = Instant.parse("0000-01-01T00:00:00Z").getEpochSecond();
+		long max = Instant.parse("9999-12-31T23:59:59Z").getEpochSecond();
+		for (int i = 0; i < 100000; i++) {
+			long epochSecond = min + (long) (random.nextDouble() * (max - min));
+			String value = DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochSecond(epochSecond));
+			assertEquals(value, epochSecond, TimestampParser.parseEpochSecond(value));
+		}
+	}
+	
+	@Test
+	public void parsesLeapDaysAndBounds() {
+		String[] values = {"1970-01-01T00:00:00Z", "1969-12-31T23:59:59Z", "2000-02-29T12:00:00Z",
+				"2016-02-29T23:59:59Z", "2019-01-07T10:00:00Z", "2019-12-31T23:59:59Z", "0000-01-01T00:00:00Z",
+				"0000-01-15T00:00:00Z", "0000-02-29T23:59:59Z", "0000-03-01T00:00:00Z", "0400-02-29T00:00:00Z"};
+		for (String value : values) {
+			assertEquals(value, Instant.parse(value).getEpochSecond(), TimestampParser.parseEpochSecond(value));
+		}
+	}
+	
+	@Test
+	public void rejectsInvalidTimestamps() {
+		String[] values = {null, "", "2019-01-07", "2019-01-07T10:00:00", "2019-01-07T10:00:00.000Z",
+				"2019-01-07 10:00:00Z", "2019/01/07T10:00:00Z", "2019-1-07T10:00:00Z", "2019-01-07T10:00:0aZ",
+				"2019-13-07T10:00:00Z", "2019-00-07T10:00:00Z", "2019-02-29T10:00:00Z", "1900-02-29T10:00:00Z",
+				"2019-04-31T10:00:00Z", "2019-01-00T10:00:00Z", "2019-01-07T24:00:00Z", "2019-01-07T10:60:00Z",
+				"2019-01-07T10:00:60Z", "-019-01-07T10:00:00Z"};
+		for (String value : values) {
+			try {
+				TimestampParser.parseEpochSecond(value);
+				fail("Parsed " + value);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}